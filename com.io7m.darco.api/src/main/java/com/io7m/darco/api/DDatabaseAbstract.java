@@ -27,8 +27,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static com.io7m.darco.api.DDatabaseTransactionCloseBehavior.ON_CLOSE_CLOSE_CONNECTION;
+import static com.io7m.darco.api.DDatabaseTransactionCloseBehavior.ON_CLOSE_DO_NOTHING;
 
 /**
  * An abstract implementation of the database type for databases.
@@ -50,10 +53,14 @@ public abstract class DDatabaseAbstract<
   private final DataSource dataSource;
   private final Map<Class<?>, Q> queryProviders;
   private final CloseableCollectionType<DDatabaseException> resources;
+  private final DDatabaseReadiness readiness;
+  private final Optional<DDatabaseAdmissionController> admission;
+  private final DDatabaseRegistry registry;
 
   protected DDatabaseAbstract(
     final C inConfiguration,
     final DataSource inDataSource,
+    final DDatabaseReadiness inReadiness,
     final Collection<Q> inQueryProviders,
     final CloseableCollectionType<DDatabaseException> inResources)
   {
@@ -65,6 +72,40 @@ public abstract class DDatabaseAbstract<
       Objects.requireNonNull(inResources, "inResources");
     this.queryProviders =
       collectQueryProviders(inQueryProviders);
+    this.readiness =
+      Objects.requireNonNull(inReadiness, "readiness");
+    this.admission =
+      inConfiguration.admission()
+        .map(c -> {
+          return this.resources.add(
+            new DDatabaseAdmissionController(
+              c,
+              inConfiguration.telemetry(),
+              inConfiguration.kind().value()
+            )
+          );
+        });
+
+    final var watchdog =
+      inConfiguration.watchdog();
+
+    this.registry =
+      new DDatabaseRegistry(
+        inConfiguration.telemetry(),
+        inConfiguration.kind().value(),
+        watchdog.map(DDatabaseWatchdogConfiguration::stackTraceSampling)
+          .orElse(Integer.valueOf(0))
+          .intValue()
+      );
+
+    watchdog.ifPresent(w -> {
+      final var task =
+        DDatabaseDeadlines.scheduleRepeating(
+          w.interval(),
+          () -> this.registry.inspect(w)
+        );
+      this.resources.add(() -> task.cancel(false));
+    });
   }
 
   private static <
@@ -104,13 +145,35 @@ public abstract class DDatabaseAbstract<
     this.resources.close();
   }
 
+  @Override
+  public final DDatabaseRegistry registry()
+  {
+    return this.registry;
+  }
+
+  @Override
+  public final CompletableFuture<Void> readiness()
+  {
+    return this.readiness.future();
+  }
+
   @Override
   public final N openConnectionWithRole(
     final String role)
     throws DDatabaseException
+  {
+    return this.openConnectionWithRoleAndAutoCommit(role, false);
+  }
+
+  private N openConnectionWithRoleAndAutoCommit(
+    final String role,
+    final boolean autoCommit)
+    throws DDatabaseException
   {
     Objects.requireNonNull(role, "role");
 
+    this.readiness.await(this.configuration.readinessTimeout());
+
     final var userPass =
       this.configuration.roles()
         .get(role);
@@ -121,7 +184,7 @@ public abstract class DDatabaseAbstract<
 
     final var span =
       tracer.spanBuilder("DatabaseConnection")
-        .setAttribute("db.system", DDatabaseKinds.sqlite().value())
+        .setAttribute("db.system", this.configuration.kind().value())
         .startSpan();
 
     try {
@@ -133,8 +196,21 @@ public abstract class DDatabaseAbstract<
         );
       span.addEvent("ObtainedConnection");
 
-      conn.setAutoCommit(false);
-      return this.createConnection(span, conn, this.queryProviders);
+      if (conn.getAutoCommit() != autoCommit) {
+        conn.setAutoCommit(autoCommit);
+      }
+
+      final var connection =
+        this.createConnection(span, conn, this.queryProviders);
+
+      final var entry =
+        connection.registerResource(this.registry.register(role));
+      if (connection
+        instanceof final DDatabaseConnectionAbstract<?, ?, ?> c) {
+        c.setRegistryEntry(entry);
+        this.admission.ifPresent(c::setAdmission);
+      }
+      return connection;
     } catch (final SQLException e) {
       span.recordException(e);
       span.end();
@@ -142,6 +218,40 @@ public abstract class DDatabaseAbstract<
     }
   }
 
+  @Override
+  public final <P, R, S extends DDatabaseQueryType<P, R>> R queryOnce(
+    final Class<S> queryClass,
+    final P parameters)
+    throws DDatabaseException
+  {
+    return this.queryOnceWithRole(
+      this.configuration.defaultRole().userName(),
+      queryClass,
+      parameters
+    );
+  }
+
+  @Override
+  public final <P, R, S extends DDatabaseQueryType<P, R>> R queryOnceWithRole(
+    final String role,
+    final Class<S> queryClass,
+    final P parameters)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(role, "role");
+    Objects.requireNonNull(queryClass, "queryClass");
+    Objects.requireNonNull(parameters, "parameters");
+
+    try (var connection =
+           this.openConnectionWithRoleAndAutoCommit(role, true)) {
+      try (var transaction =
+             connection.openTransaction(ON_CLOSE_DO_NOTHING)) {
+        final S query = transaction.query(queryClass);
+        return query.execute(parameters);
+      }
+    }
+  }
+
   @Override
   public final C configuration()
   {
@@ -152,19 +262,42 @@ public abstract class DDatabaseAbstract<
   public final T openTransaction()
     throws DDatabaseException
   {
-    return this.openConnection()
-      .openTransaction(ON_CLOSE_CLOSE_CONNECTION);
+    return this.openTransaction(DDatabaseTransactionOptions.defaults());
+  }
+
+  @Override
+  public final T openTransaction(
+    final DDatabaseTransactionOptions options)
+    throws DDatabaseException
+  {
+    return this.openTransactionWithRole(
+      this.configuration.defaultRole().userName(),
+      options
+    );
   }
 
   @Override
   public final T openTransactionWithRole(
     final String role)
     throws DDatabaseException
+  {
+    return this.openTransactionWithRole(
+      role,
+      DDatabaseTransactionOptions.defaults()
+    );
+  }
+
+  @Override
+  public final T openTransactionWithRole(
+    final String role,
+    final DDatabaseTransactionOptions options)
+    throws DDatabaseException
   {
     Objects.requireNonNull(role, "role");
+    Objects.requireNonNull(options, "options");
 
     return this.openConnectionWithRole(role)
-      .openTransaction(ON_CLOSE_CLOSE_CONNECTION);
+      .openTransaction(ON_CLOSE_CLOSE_CONNECTION, options);
   }
 
   /**
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The configuration of adaptive admission control. The number of
+ * transactions that may be in progress at once is limited, and the limit is
+ * adjusted using an additive-increase/multiplicative-decrease algorithm: a
+ * transaction that stays open for longer than the latency threshold (or
+ * that could not be started at all) multiplies the limit by the backoff
+ * ratio, and each transaction that completes within the threshold while
+ * the limit is at least half used increases the limit by one. The limit is
+ * decreased at most once per latency threshold, however many transactions
+ * are slow. Callers that cannot be admitted wait for up to the queue
+ * timeout, and are then rejected.
+ *
+ * @param initialLimit     The initial limit
+ * @param minimumLimit     The lowest value of the limit
+ * @param maximumLimit     The highest value of the limit
+ * @param latencyThreshold The duration above which a transaction indicates
+ *                         overload
+ * @param backoffRatio     The factor by which the limit is multiplied on
+ *                         overload, in the range {@code (0, 1)}
+ * @param queueTimeout     The maximum time a caller waits to be admitted; a
+ *                         zero duration rejects immediately
+ *
+ * @see DDatabaseConfigurationType#admission()
+ */
+
+public record DDatabaseAdmissionConfiguration(
+  int initialLimit,
+  int minimumLimit,
+  int maximumLimit,
+  Duration latencyThreshold,
+  double backoffRatio,
+  Duration queueTimeout)
+{
+  /**
+   * The configuration of adaptive admission control.
+   *
+   * @param initialLimit     The initial limit
+   * @param minimumLimit     The lowest value of the limit
+   * @param maximumLimit     The highest value of the limit
+   * @param latencyThreshold The duration above which a transaction indicates
+   *                         overload
+   * @param backoffRatio     The factor by which the limit is multiplied on
+   *                         overload, in the range {@code (0, 1)}
+   * @param queueTimeout     The maximum time a caller waits to be admitted; a
+   *                         zero duration rejects immediately
+   */
+
+  public DDatabaseAdmissionConfiguration
+  {
+    Objects.requireNonNull(latencyThreshold, "latencyThreshold");
+    Objects.requireNonNull(queueTimeout, "queueTimeout");
+
+    if (minimumLimit < 1) {
+      throw new IllegalArgumentException(
+        "Minimum limit %d must be >= 1".formatted(minimumLimit)
+      );
+    }
+    if (maximumLimit < minimumLimit) {
+      throw new IllegalArgumentException(
+        "Maximum limit %d must be >= minimum limit %d"
+          .formatted(maximumLimit, minimumLimit)
+      );
+    }
+    if (initialLimit < minimumLimit || initialLimit > maximumLimit) {
+      throw new IllegalArgumentException(
+        "Initial limit %d must be in the range [%d, %d]"
+          .formatted(initialLimit, minimumLimit, maximumLimit)
+      );
+    }
+    if (!(backoffRatio > 0.0 && backoffRatio < 1.0)) {
+      throw new IllegalArgumentException(
+        "Backoff ratio %s must be in the range (0, 1)"
+          .formatted(backoffRatio)
+      );
+    }
+    if (queueTimeout.isNegative()) {
+      throw new IllegalArgumentException(
+        "Queue timeout %s must be non-negative".formatted(queueTimeout)
+      );
+    }
+  }
+
+  /**
+   * An admission configuration with reasonable defaults for the given
+   * maximum limit.
+   *
+   * @param maximumLimit The highest value of the limit
+   *
+   * @return An admission configuration
+   */
+
+  public static DDatabaseAdmissionConfiguration ofMaximum(
+    final int maximumLimit)
+  {
+    return new DDatabaseAdmissionConfiguration(
+      Math.max(1, maximumLimit / 2),
+      1,
+      maximumLimit,
+      Duration.ofSeconds(1L),
+      0.9,
+      Duration.ofMillis(100L)
+    );
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An adaptive admission controller that limits the number of transactions
+ * that may be in progress on a database at once.
+ *
+ * @see DDatabaseAdmissionConfiguration
+ */
+
+public final class DDatabaseAdmissionController implements AutoCloseable
+{
+  private final DDatabaseAdmissionConfiguration configuration;
+  private final DDatabaseMetrics metrics;
+  private final Attributes attributes;
+  private final ReentrantLock lock;
+  private final Condition available;
+  private final ObservableLongGauge limitGauge;
+  private final ObservableLongGauge inFlightGauge;
+  private int limit;
+  private int inFlight;
+  private long timeDecreased;
+  private boolean closed;
+
+  /**
+   * An adaptive admission controller.
+   *
+   * @param inConfiguration The admission configuration
+   * @param inTelemetry     The telemetry used to publish metrics
+   * @param inDatabaseKind  The database kind, used to label metrics
+   */
+
+  public DDatabaseAdmissionController(
+    final DDatabaseAdmissionConfiguration inConfiguration,
+    final DDatabaseTelemetryType inTelemetry,
+    final String inDatabaseKind)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.metrics =
+      DDatabaseMetrics.get(Objects.requireNonNull(inTelemetry, "telemetry"));
+    this.attributes =
+      Attributes.of(
+        AttributeKey.stringKey("db.system"),
+        Objects.requireNonNull(inDatabaseKind, "databaseKind")
+      );
+
+    this.lock = new ReentrantLock();
+    this.available = this.lock.newCondition();
+    this.limit = inConfiguration.initialLimit();
+    this.inFlight = 0;
+    this.timeDecreased =
+      System.nanoTime() - inConfiguration.latencyThreshold().toNanos();
+    this.limitGauge =
+      DDatabaseMetrics.admissionLimit(
+        inTelemetry, this::limit, this.attributes);
+    this.inFlightGauge =
+      DDatabaseMetrics.admissionInFlight(
+        inTelemetry, this::inFlight, this.attributes);
+  }
+
+  /**
+   * @return The current limit
+   */
+
+  public int limit()
+  {
+    this.lock.lock();
+    try {
+      return this.limit;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of permits currently held
+   */
+
+  public int inFlight()
+  {
+    this.lock.lock();
+    try {
+      return this.inFlight;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Acquire a permit, waiting for up to the configured queue timeout if the
+   * limit has been reached.
+   *
+   * @return A permit that must be closed when the work is finished
+   *
+   * @throws DDatabaseException If no permit could be acquired in time
+   */
+
+  public DDatabaseAdmissionPermit acquire()
+    throws DDatabaseException
+  {
+    final var timeStart = System.nanoTime();
+
+    this.lock.lock();
+    try {
+      var remaining = this.configuration.queueTimeout().toNanos();
+      while (this.inFlight >= this.limit) {
+        if (remaining <= 0L) {
+          this.metrics.admissionRejected().add(1L, this.attributes);
+          throw new DDatabaseException(
+            "The database is overloaded.",
+            "error-database-overloaded",
+            Map.ofEntries(
+              Map.entry("Limit", Integer.toString(this.limit)),
+              Map.entry(
+                "QueueTimeout",
+                this.configuration.queueTimeout().toString())
+            ),
+            Optional.of("Retry the operation later.")
+          );
+        }
+        try {
+          remaining = this.available.awaitNanos(remaining);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw DDatabaseException.ofException(e);
+        }
+      }
+      ++this.inFlight;
+    } finally {
+      this.lock.unlock();
+    }
+
+    final var timeAdmitted = System.nanoTime();
+    this.metrics.admissionQueueTime()
+      .record(
+        (double) (timeAdmitted - timeStart) / 1_000_000_000.0,
+        this.attributes
+      );
+    return new DDatabaseAdmissionPermit(this, timeAdmitted);
+  }
+
+  void release(
+    final long heldNanos,
+    final boolean failed)
+  {
+    this.lock.lock();
+    try {
+      final var utilized = this.inFlight * 2 >= this.limit;
+      --this.inFlight;
+
+      final var window =
+        this.configuration.latencyThreshold().toNanos();
+      final var overloaded =
+        failed || heldNanos > window;
+
+      /*
+       * The limit is decreased at most once per latency window, so that a
+       * burst of slow releases (which all reflect the same overload) does
+       * not collapse the limit to the minimum at once.
+       */
+
+      final var now = System.nanoTime();
+      final int newLimit;
+      if (overloaded) {
+        if (now - this.timeDecreased < window) {
+          newLimit = this.limit;
+        } else {
+          this.timeDecreased = now;
+          newLimit = Math.max(
+            this.configuration.minimumLimit(),
+            (int) (this.limit * this.configuration.backoffRatio())
+          );
+        }
+      } else if (utilized) {
+        newLimit = Math.min(this.configuration.maximumLimit(), this.limit + 1);
+      } else {
+        newLimit = this.limit;
+      }
+
+      this.limit = newLimit;
+      this.available.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+    } finally {
+      this.lock.unlock();
+    }
+
+    /*
+     * The gauge callbacks take the lock, so the gauges are closed outside
+     * of it.
+     */
+
+    this.limitGauge.close();
+    this.inFlightGauge.close();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A permit issued by an admission controller. Closing the permit returns
+ * it to the controller, and the time for which it was held is used to adjust
+ * the controller's limit. Closing a permit more than once has no effect.
+ *
+ * @see DDatabaseAdmissionController
+ */
+
+public final class DDatabaseAdmissionPermit implements AutoCloseable
+{
+  private final DDatabaseAdmissionController controller;
+  private final long timeAdmitted;
+  private final AtomicBoolean released;
+  private volatile boolean failed;
+
+  DDatabaseAdmissionPermit(
+    final DDatabaseAdmissionController inController,
+    final long inTimeAdmitted)
+  {
+    this.controller = inController;
+    this.timeAdmitted = inTimeAdmitted;
+    this.released = new AtomicBoolean(false);
+    this.failed = false;
+  }
+
+  /**
+   * Indicate that the work performed under this permit failed in a manner
+   * that suggests the database is overloaded. The limit will be reduced
+   * when the permit is closed.
+   */
+
+  public void fail()
+  {
+    this.failed = true;
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.released.compareAndSet(false, true)) {
+      this.controller.release(
+        System.nanoTime() - this.timeAdmitted,
+        this.failed
+      );
+    }
+  }
+}
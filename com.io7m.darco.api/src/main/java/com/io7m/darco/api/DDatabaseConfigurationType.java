@@ -17,7 +17,9 @@
 package com.io7m.darco.api;
 
 import com.io7m.jxe.core.JXEHardenedSAXParsers;
+import com.io7m.lanark.core.RDottedName;
 
+import java.time.Duration;
 import java.util.Optional;
 
 /**
@@ -26,6 +28,21 @@ import java.util.Optional;
 
 public interface DDatabaseConfigurationType
 {
+  /**
+   * The database kind, used to label telemetry. The SQLite and PostgreSQL
+   * configurations return their own kinds. The default implementation
+   * returns {@link DDatabaseKinds#unspecified()}.
+   *
+   * @return The database kind (such as "org.sqlite", "org.postgresql")
+   *
+   * @see DDatabaseKinds
+   */
+
+  default RDottedName kind()
+  {
+    return DDatabaseKinds.unspecified();
+  }
+
   /**
    * @return A factory of SAX parsers used to parse database schemas
    */
@@ -61,4 +78,45 @@ public interface DDatabaseConfigurationType
    */
 
   DRoles roles();
+
+  /**
+   * The maximum time that a caller opening a connection will wait for
+   * a database that was opened asynchronously to become ready.
+   *
+   * @return The readiness timeout
+   *
+   * @see DDatabaseFactoryType#openAsynchronously(DDatabaseConfigurationType, java.util.function.Consumer)
+   */
+
+  default Duration readinessTimeout()
+  {
+    return Duration.ofSeconds(30L);
+  }
+
+  /**
+   * The configuration of adaptive admission control for transactions. If no
+   * configuration is provided, transactions are not subject to admission
+   * control.
+   *
+   * @return The admission configuration
+   */
+
+  default Optional<DDatabaseAdmissionConfiguration> admission()
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * The configuration of the connection watchdog. If no configuration is
+   * provided, open connections are still tracked, but no watchdog runs.
+   *
+   * @return The watchdog configuration
+   *
+   * @see DDatabaseType#registry()
+   */
+
+  default Optional<DDatabaseWatchdogConfiguration> watchdog()
+  {
+    return Optional.empty();
+  }
 }
@@ -47,6 +47,8 @@ public abstract class DDatabaseConnectionAbstract<
   private final C configuration;
   private final Map<Class<?>, Q> queryMap;
   private final CloseableCollectionType<DDatabaseException> resources;
+  private DDatabaseRegistry.Entry registryEntry;
+  private DDatabaseAdmissionController admission;
 
   @Override
   public final <R extends AutoCloseable> R registerResource(
@@ -88,6 +90,18 @@ public abstract class DDatabaseConnectionAbstract<
     return this.connection;
   }
 
+  final void setRegistryEntry(
+    final DDatabaseRegistry.Entry entry)
+  {
+    this.registryEntry = Objects.requireNonNull(entry, "entry");
+  }
+
+  final void setAdmission(
+    final DDatabaseAdmissionController controller)
+  {
+    this.admission = Objects.requireNonNull(controller, "controller");
+  }
+
   /**
    * Create a new transaction.
    *
@@ -106,9 +120,15 @@ public abstract class DDatabaseConnectionAbstract<
 
   @Override
   public final T openTransaction(
-    final DDatabaseTransactionCloseBehavior closeBehavior)
+    final DDatabaseTransactionCloseBehavior closeBehavior,
+    final DDatabaseTransactionOptions options)
+    throws DDatabaseException
   {
     Objects.requireNonNull(closeBehavior, "closeBehavior");
+    Objects.requireNonNull(options, "options");
+
+    final var permit =
+      this.admission != null ? this.admission.acquire() : null;
 
     final var transactionSpan =
       this.configuration.telemetry()
@@ -117,13 +137,42 @@ public abstract class DDatabaseConnectionAbstract<
         .setParent(Context.current().with(this.connectionSpan))
         .startSpan();
 
-    return this.resources.add(
-      this.createTransaction(
-        closeBehavior,
-        transactionSpan,
-        this.queryMap
-      )
-    );
+    final var transaction =
+      this.resources.add(
+        this.createTransaction(
+          closeBehavior,
+          transactionSpan,
+          this.queryMap
+        )
+      );
+
+    if (permit != null) {
+      transaction.registerResource(permit);
+    }
+
+    final var entry = this.registryEntry;
+    if (entry != null) {
+      entry.transactionOpened(transaction);
+      transaction.registerResource(() -> entry.transactionClosed(transaction));
+    }
+
+    if (transaction
+      instanceof final DDatabaseTransactionAbstract<?, ?, ?, ?> t) {
+      try {
+        t.begin(options);
+      } catch (final DDatabaseException e) {
+        if (permit != null) {
+          permit.fail();
+        }
+        try {
+          transaction.close();
+        } catch (final DDatabaseException ex) {
+          e.addSuppressed(ex);
+        }
+        throw e;
+      }
+    }
+    return transaction;
   }
 
   /**
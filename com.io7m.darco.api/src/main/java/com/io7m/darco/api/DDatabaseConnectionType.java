@@ -79,7 +79,48 @@ public interface DDatabaseConnectionType<T extends DDatabaseTransactionType>
    * @throws DDatabaseException On errors
    */
 
+  default T openTransaction(
+    final DDatabaseTransactionCloseBehavior closeBehavior)
+    throws DDatabaseException
+  {
+    return this.openTransaction(
+      closeBehavior,
+      DDatabaseTransactionOptions.defaults()
+    );
+  }
+
+  /**
+   * Begin a new transaction. The transaction will be registered as a
+   * closeable resource with this connection.
+   *
+   * @param options The transaction options
+   *
+   * @return The transaction
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  default T openTransaction(
+    final DDatabaseTransactionOptions options)
+    throws DDatabaseException
+  {
+    return this.openTransaction(ON_CLOSE_DO_NOTHING, options);
+  }
+
+  /**
+   * Begin a new transaction. The transaction will be registered as a
+   * closeable resource with this connection.
+   *
+   * @param closeBehavior The close behavior
+   * @param options       The transaction options
+   *
+   * @return The transaction
+   *
+   * @throws DDatabaseException On errors
+   */
+
   T openTransaction(
-    DDatabaseTransactionCloseBehavior closeBehavior)
+    DDatabaseTransactionCloseBehavior closeBehavior,
+    DDatabaseTransactionOptions options)
     throws DDatabaseException;
 }
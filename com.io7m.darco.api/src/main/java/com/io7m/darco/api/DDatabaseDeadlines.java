@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scheduler used to enforce transaction and query deadlines, and to run
+ * connection watchdogs. A single daemon thread is shared by all databases,
+ * and so the tasks it runs only inspect connections and flag transactions.
+ * Anything that talks to a database server (such as sending a cancel request,
+ * which may involve opening a new connection) is handed to a separate pool
+ * of daemon threads with {@link #execute(Runnable)}, so that one slow or
+ * unreachable server cannot delay the deadlines of every other database.
+ */
+
+final class DDatabaseDeadlines
+{
+  private static final ScheduledThreadPoolExecutor SCHEDULER =
+    createScheduler();
+  private static final ExecutorService CANCELLATIONS =
+    Executors.newCachedThreadPool(
+      Thread.ofPlatform()
+        .name("com.io7m.darco.cancellations-", 0L)
+        .daemon(true)
+        .factory()
+    );
+
+  private DDatabaseDeadlines()
+  {
+
+  }
+
+  private static ScheduledThreadPoolExecutor createScheduler()
+  {
+    final var executor =
+      new ScheduledThreadPoolExecutor(
+        1,
+        Thread.ofPlatform()
+          .name("com.io7m.darco.deadlines")
+          .daemon(true)
+          .factory()
+      );
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  /**
+   * Run the given task once the given duration has elapsed.
+   *
+   * @param duration The duration
+   * @param task     The task
+   *
+   * @return The scheduled task
+   */
+
+  static ScheduledFuture<?> schedule(
+    final Duration duration,
+    final Runnable task)
+  {
+    return SCHEDULER.schedule(task, duration.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Run the given task, which may block, on a thread other than the
+   * scheduler thread.
+   *
+   * @param task The task
+   */
+
+  static void execute(
+    final Runnable task)
+  {
+    CANCELLATIONS.execute(task);
+  }
+
+  /**
+   * Run the given task repeatedly at the given interval.
+   *
+   * @param interval The interval
+   * @param task     The task
+   *
+   * @return The scheduled task
+   */
+
+  static ScheduledFuture<?> scheduleRepeating(
+    final Duration interval,
+    final Runnable task)
+  {
+    final var nanos = interval.toNanos();
+    return SCHEDULER.scheduleAtFixedRate(
+      task,
+      nanos,
+      nanos,
+      TimeUnit.NANOSECONDS
+    );
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+/**
+ * The durability of a transaction's commit.
+ */
+
+public enum DDatabaseDurability
+{
+  /**
+   * The transaction is guaranteed to be durable once the commit has
+   * completed. This is the default for all databases.
+   */
+
+  DURABLE,
+
+  /**
+   * The commit may return before the transaction has been flushed to
+   * durable storage. A crash shortly after the commit may lose the
+   * transaction, but will not corrupt the database. This is appropriate for
+   * non-critical writes such as telemetry, where commit throughput matters
+   * more than the loss of the most recent transactions.
+   *
+   * On PostgreSQL, this corresponds to {@code SET LOCAL synchronous_commit = off}.
+   * On SQLite, this corresponds to {@code PRAGMA synchronous = OFF} for the
+   * duration of the transaction.
+   */
+
+  RELAXED
+}
@@ -59,4 +59,31 @@ public interface DDatabaseFactoryType<
     C configuration,
     Consumer<String> startupMessages)
     throws DDatabaseException;
+
+  /**
+   * Open a database asynchronously. The database is returned immediately,
+   * and setup and upgrades are performed in the background. Attempts to
+   * open connections wait for setup to complete, up to the configured
+   * {@link DDatabaseConfigurationType#readinessTimeout()}, and fail with
+   * the setup error if setup fails. Startup messages are delivered on the
+   * background thread. Closing the database waits for setup to complete.
+   * The default implementation opens the database synchronously.
+   *
+   * @param configuration   The database configuration
+   * @param startupMessages A function that will receive startup messages
+   *
+   * @return A database
+   *
+   * @throws DDatabaseException On errors
+   *
+   * @see DDatabaseType#readiness()
+   */
+
+  default D openAsynchronously(
+    final C configuration,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    return this.open(configuration, startupMessages);
+  }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+/**
+ * The isolation level of a transaction.
+ *
+ * @see "https://www.postgresql.org/docs/current/transaction-iso.html"
+ * @see "https://www.sqlite.org/isolation.html"
+ */
+
+public enum DDatabaseIsolationLevel
+{
+  /**
+   * The {@code READ UNCOMMITTED} isolation level.
+   */
+
+  READ_UNCOMMITTED("READ UNCOMMITTED"),
+
+  /**
+   * The {@code READ COMMITTED} isolation level.
+   */
+
+  READ_COMMITTED("READ COMMITTED"),
+
+  /**
+   * The {@code REPEATABLE READ} isolation level.
+   */
+
+  REPEATABLE_READ("REPEATABLE READ"),
+
+  /**
+   * The {@code SERIALIZABLE} isolation level.
+   */
+
+  SERIALIZABLE("SERIALIZABLE");
+
+  private final String sqlName;
+
+  DDatabaseIsolationLevel(
+    final String inSqlName)
+  {
+    this.sqlName = inSqlName;
+  }
+
+  /**
+   * @return The name of the isolation level as it appears in SQL
+   */
+
+  public String sqlName()
+  {
+    return this.sqlName;
+  }
+}
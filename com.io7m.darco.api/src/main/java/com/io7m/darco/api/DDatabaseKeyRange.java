@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A half-open range of integer keys {@code [lower, upper)}.
+ *
+ * @param lower The lower bound (inclusive)
+ * @param upper The upper bound (exclusive)
+ */
+
+public record DDatabaseKeyRange(
+  long lower,
+  long upper)
+{
+  /**
+   * A half-open range of integer keys {@code [lower, upper)}.
+   *
+   * @param lower The lower bound (inclusive)
+   * @param upper The upper bound (exclusive)
+   */
+
+  public DDatabaseKeyRange
+  {
+    if (lower > upper) {
+      throw new IllegalArgumentException(
+        "Lower bound %d must be <= upper bound %d".formatted(lower, upper)
+      );
+    }
+  }
+
+  /**
+   * @return The number of keys in the range
+   *
+   * @throws ArithmeticException If the size does not fit in a {@code long}
+   *                             (only possible for ranges wider than
+   *                             {@link Long#MAX_VALUE})
+   */
+
+  public long size()
+  {
+    return Math.subtractExact(this.upper, this.lower);
+  }
+
+  /**
+   * Split the range into at most the given number of contiguous, non-empty
+   * sub-ranges of (as near as possible) equal size. Fewer sub-ranges are
+   * returned if the range has fewer keys than requested, and an empty range
+   * is returned unchanged. Any range can be split, including those too wide
+   * for their {@link #size()} to be represented.
+   *
+   * @param count The number of sub-ranges
+   *
+   * @return The sub-ranges, in ascending order
+   */
+
+  public List<DDatabaseKeyRange> split(
+    final int count)
+  {
+    if (count < 1) {
+      throw new IllegalArgumentException(
+        "Count %d must be >= 1".formatted(count)
+      );
+    }
+
+    /*
+     * The size of the range always fits in an unsigned long, and the bounds
+     * of the sub-ranges are computed with wrapping arithmetic that yields
+     * the correct signed values.
+     */
+
+    final var size = this.upper - this.lower;
+    final var parts =
+      Long.compareUnsigned(size, count) < 0 ? Math.max(1L, size) : count;
+    final var base = Long.divideUnsigned(size, parts);
+    final var extra = Long.remainderUnsigned(size, parts);
+
+    final var ranges = new ArrayList<DDatabaseKeyRange>((int) parts);
+    var start = this.lower;
+    for (long index = 0L; index < parts; ++index) {
+      final var length = base + (index < extra ? 1L : 0L);
+      ranges.add(new DDatabaseKeyRange(start, start + length));
+      start += length;
+    }
+    return List.copyOf(ranges);
+  }
+}
@@ -31,6 +31,9 @@ public final class DDatabaseKinds
   private static final RDottedName SQLITE =
     new RDottedName("org.sqlite");
 
+  private static final RDottedName UNSPECIFIED =
+    new RDottedName("unspecified");
+
   private DDatabaseKinds()
   {
 
@@ -61,4 +64,16 @@ public final class DDatabaseKinds
   {
     return POSTGRESQL;
   }
+
+  /**
+   * An unspecified database. This is the kind reported by configurations
+   * that do not declare one.
+   *
+   * @return The kind name
+   */
+
+  public static RDottedName unspecified()
+  {
+    return UNSPECIFIED;
+  }
 }
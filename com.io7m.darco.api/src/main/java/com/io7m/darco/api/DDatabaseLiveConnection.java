@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A snapshot of a connection that is open on a database.
+ *
+ * @param id                    The connection ID, unique within the database
+ * @param role                  The role used to open the connection
+ * @param timeOpened            The time the connection was opened
+ * @param age                   The time for which the connection has been held
+ * @param timeTransactionOpened The time the current transaction was opened,
+ *                              if one is open
+ * @param openedBy              The stack trace of the code that opened the
+ *                              connection, if the connection was sampled for
+ *                              stack traces
+ *
+ * @see DDatabaseRegistry
+ */
+
+public record DDatabaseLiveConnection(
+  long id,
+  String role,
+  Instant timeOpened,
+  Duration age,
+  Optional<Instant> timeTransactionOpened,
+  List<StackTraceElement> openedBy)
+{
+  /**
+   * A snapshot of a connection that is open on a database.
+   *
+   * @param id                    The connection ID, unique within the database
+   * @param role                  The role used to open the connection
+   * @param timeOpened            The time the connection was opened
+   * @param age                   The time for which the connection has been
+   *                              held
+   * @param timeTransactionOpened The time the current transaction was opened,
+   *                              if one is open
+   * @param openedBy              The stack trace of the code that opened the
+   *                              connection, if the connection was sampled for
+   *                              stack traces
+   */
+
+  public DDatabaseLiveConnection
+  {
+    Objects.requireNonNull(role, "role");
+    Objects.requireNonNull(timeOpened, "timeOpened");
+    Objects.requireNonNull(age, "age");
+    Objects.requireNonNull(timeTransactionOpened, "timeTransactionOpened");
+    openedBy = List.copyOf(openedBy);
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.LongUpDownCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * The metric instruments used by the abstract database implementations.
+ * Instruments are created once per telemetry instance and then shared by all
+ * databases using that telemetry. The instruments are held weakly by the
+ * telemetry, so that they are discarded along with it. The telemetry, rather
+ * than its meter, is used as the key because an SDK instrument may refer to
+ * the meter that created it, which would prevent the entry from ever being
+ * discarded. The attributes used to label per-query and
+ * per-transaction measurements are also created once and reused, so that
+ * recording a measurement does not allocate.
+ */
+
+final class DDatabaseMetrics
+{
+  private static final Map<DDatabaseTelemetryType, DDatabaseMetrics> METRICS =
+    Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final AttributeKey<String> DB_SYSTEM =
+    AttributeKey.stringKey("db.system");
+  private static final AttributeKey<String> QUERY_CLASS =
+    AttributeKey.stringKey("db.query.class");
+  private static final AttributeKey<String> OUTCOME =
+    AttributeKey.stringKey("outcome");
+
+  private static final ClassValue<ConcurrentHashMap<String, Attributes>> QUERY_LABELS =
+    new ClassValue<>()
+    {
+      @Override
+      protected ConcurrentHashMap<String, Attributes> computeValue(
+        final Class<?> type)
+      {
+        return new ConcurrentHashMap<>(1);
+      }
+    };
+
+  private static final ConcurrentHashMap<String, TransactionLabels> TRANSACTION_LABELS =
+    new ConcurrentHashMap<>();
+
+  private final DoubleHistogram schemaStatementDuration;
+  private final DoubleHistogram admissionQueueTime;
+  private final LongCounter admissionRejected;
+  private final LongUpDownCounter connectionsOpen;
+  private final LongCounter watchdogHeldTooLong;
+  private final LongCounter watchdogCancelled;
+  private final DoubleHistogram queryDuration;
+  private final LongCounter queryErrors;
+  private final LongHistogram queryRows;
+  private final LongCounter transactionsOpened;
+  private final LongCounter transactionsCompleted;
+  private final DoubleHistogram transactionDuration;
+
+  private DDatabaseMetrics(
+    final Meter meter)
+  {
+    Objects.requireNonNull(meter, "meter");
+
+    this.schemaStatementDuration =
+      meter.histogramBuilder("darco.schema.statement_duration")
+        .setDescription(
+          "The time taken to execute each statement during schema creation and upgrades.")
+        .setUnit("s")
+        .build();
+
+    this.admissionQueueTime =
+      meter.histogramBuilder("darco.admission.queue_time")
+        .setDescription(
+          "The time spent waiting to be admitted by admission control.")
+        .setUnit("s")
+        .build();
+
+    this.admissionRejected =
+      meter.counterBuilder("darco.admission.rejected")
+        .setDescription(
+          "The number of requests rejected by admission control.")
+        .build();
+
+    this.connectionsOpen =
+      meter.upDownCounterBuilder("darco.connections.open")
+        .setDescription(
+          "The number of database connections currently open.")
+        .build();
+
+    this.watchdogHeldTooLong =
+      meter.counterBuilder("darco.watchdog.held_too_long")
+        .setDescription(
+          "The number of connections found by the watchdog to have been held for too long.")
+        .build();
+
+    this.watchdogCancelled =
+      meter.counterBuilder("darco.watchdog.cancelled")
+        .setDescription(
+          "The number of transactions cancelled by the watchdog.")
+        .build();
+
+    this.queryDuration =
+      meter.histogramBuilder("darco.query.duration")
+        .setDescription(
+          "The time taken to execute each query, labelled by query class.")
+        .setUnit("s")
+        .build();
+
+    this.queryErrors =
+      meter.counterBuilder("darco.query.errors")
+        .setDescription(
+          "The number of query executions that failed, labelled by query class.")
+        .build();
+
+    this.queryRows =
+      meter.histogramBuilder("darco.query.rows")
+        .setDescription(
+          "The number of rows returned or affected by each query that reports it, labelled by query class.")
+        .ofLongs()
+        .build();
+
+    this.transactionsOpened =
+      meter.counterBuilder("darco.transaction.opened")
+        .setDescription(
+          "The number of transactions opened.")
+        .build();
+
+    this.transactionsCompleted =
+      meter.counterBuilder("darco.transaction.completed")
+        .setDescription(
+          "The number of transaction commits and rollbacks, labelled by outcome.")
+        .build();
+
+    this.transactionDuration =
+      meter.histogramBuilder("darco.transaction.duration")
+        .setDescription(
+          "The time from the start of each unit of transaction work to its commit or rollback, labelled by outcome.")
+        .setUnit("s")
+        .build();
+  }
+
+  /**
+   * The labels for measurements of a transaction.
+   *
+   * @param opened     The labels for opened transactions
+   * @param committed  The labels for commits
+   * @param rolledBack The labels for rollbacks
+   */
+
+  record TransactionLabels(
+    Attributes opened,
+    Attributes committed,
+    Attributes rolledBack)
+  {
+
+  }
+
+  /**
+   * @param databaseKind The database kind
+   *
+   * @return The labels for transactions on the given kind of database
+   */
+
+  static TransactionLabels transactionLabels(
+    final String databaseKind)
+  {
+    final var existing = TRANSACTION_LABELS.get(databaseKind);
+    if (existing != null) {
+      return existing;
+    }
+    return TRANSACTION_LABELS.computeIfAbsent(databaseKind, k -> {
+      return new TransactionLabels(
+        Attributes.of(DB_SYSTEM, k),
+        Attributes.of(DB_SYSTEM, k, OUTCOME, "commit"),
+        Attributes.of(DB_SYSTEM, k, OUTCOME, "rollback")
+      );
+    });
+  }
+
+  /**
+   * @param queryClass   The query implementation class
+   * @param databaseKind The database kind
+   *
+   * @return The labels for executions of the given query class
+   */
+
+  static Attributes queryLabels(
+    final Class<?> queryClass,
+    final String databaseKind)
+  {
+    final var byKind = QUERY_LABELS.get(queryClass);
+    final var existing = byKind.get(databaseKind);
+    if (existing != null) {
+      return existing;
+    }
+    return byKind.computeIfAbsent(databaseKind, k -> {
+      return Attributes.of(DB_SYSTEM, k, QUERY_CLASS, queryClass.getName());
+    });
+  }
+
+  /**
+   * @param telemetry The telemetry
+   *
+   * @return The instruments for the given telemetry
+   */
+
+  static DDatabaseMetrics get(
+    final DDatabaseTelemetryType telemetry)
+  {
+    return METRICS.computeIfAbsent(
+      telemetry,
+      t -> new DDatabaseMetrics(t.meter())
+    );
+  }
+
+  /**
+   * @return The schema statement duration histogram
+   */
+
+  DoubleHistogram schemaStatementDuration()
+  {
+    return this.schemaStatementDuration;
+  }
+
+  /**
+   * @return The admission queue time histogram
+   */
+
+  DoubleHistogram admissionQueueTime()
+  {
+    return this.admissionQueueTime;
+  }
+
+  /**
+   * @return The admission rejection counter
+   */
+
+  LongCounter admissionRejected()
+  {
+    return this.admissionRejected;
+  }
+
+  /**
+   * Register a gauge that observes the current limit of an admission
+   * controller. The gauge must be closed when the controller is closed.
+   *
+   * @param telemetry  The telemetry
+   * @param limit      A function that returns the current limit
+   * @param attributes The attributes
+   *
+   * @return The gauge
+   */
+
+  static ObservableLongGauge admissionLimit(
+    final DDatabaseTelemetryType telemetry,
+    final IntSupplier limit,
+    final Attributes attributes)
+  {
+    return telemetry.meter()
+      .gaugeBuilder("darco.admission.limit")
+      .setDescription(
+        "The current concurrency limit of admission control.")
+      .ofLongs()
+      .buildWithCallback(m -> m.record(limit.getAsInt(), attributes));
+  }
+
+  /**
+   * Register a gauge that observes the number of permits held from an
+   * admission controller. The gauge must be closed when the controller is
+   * closed.
+   *
+   * @param telemetry  The telemetry
+   * @param inFlight   A function that returns the number of permits held
+   * @param attributes The attributes
+   *
+   * @return The gauge
+   */
+
+  static ObservableLongGauge admissionInFlight(
+    final DDatabaseTelemetryType telemetry,
+    final IntSupplier inFlight,
+    final Attributes attributes)
+  {
+    return telemetry.meter()
+      .gaugeBuilder("darco.admission.in_flight")
+      .setDescription(
+        "The number of requests currently admitted by admission control.")
+      .ofLongs()
+      .buildWithCallback(m -> m.record(inFlight.getAsInt(), attributes));
+  }
+
+  /**
+   * @return The open connections counter
+   */
+
+  LongUpDownCounter connectionsOpen()
+  {
+    return this.connectionsOpen;
+  }
+
+  /**
+   * @return The watchdog held-too-long counter
+   */
+
+  LongCounter watchdogHeldTooLong()
+  {
+    return this.watchdogHeldTooLong;
+  }
+
+  /**
+   * @return The watchdog cancellation counter
+   */
+
+  LongCounter watchdogCancelled()
+  {
+    return this.watchdogCancelled;
+  }
+
+  /**
+   * @return The query duration histogram
+   */
+
+  DoubleHistogram queryDuration()
+  {
+    return this.queryDuration;
+  }
+
+  /**
+   * @return The query error counter
+   */
+
+  LongCounter queryErrors()
+  {
+    return this.queryErrors;
+  }
+
+  /**
+   * @return The query row count histogram
+   */
+
+  LongHistogram queryRows()
+  {
+    return this.queryRows;
+  }
+
+  /**
+   * @return The opened transactions counter
+   */
+
+  LongCounter transactionsOpened()
+  {
+    return this.transactionsOpened;
+  }
+
+  /**
+   * @return The completed transactions counter
+   */
+
+  LongCounter transactionsCompleted()
+  {
+    return this.transactionsCompleted;
+  }
+
+  /**
+   * @return The transaction duration histogram
+   */
+
+  DoubleHistogram transactionDuration()
+  {
+    return this.transactionDuration;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import io.opentelemetry.context.Context;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+import static com.io7m.darco.api.DDatabaseTransactionMode.READ_ONLY;
+
+/**
+ * Parallel scans over ranges of keys. A key range is split into a number of
+ * sub-ranges, and each sub-range is scanned in its own read-only transaction
+ * on its own connection. The partial results are combined pairwise using a
+ * caller-supplied reducer, in key order. The number of sub-ranges should not
+ * exceed the number of connections that the database can provide at once.
+ * Since each sub-range is scanned in a separate transaction, the sub-ranges
+ * do not observe a single consistent snapshot of the database.
+ */
+
+public final class DDatabaseParallelScan
+{
+  private DDatabaseParallelScan()
+  {
+
+  }
+
+  /**
+   * Scan the given key range in parallel.
+   *
+   * @param database   The database
+   * @param range      The key range
+   * @param partitions The number of sub-ranges to scan concurrently
+   * @param scanner    The scan executed for each sub-range
+   * @param reducer    The function that combines partial results
+   * @param <T>        The type of database transactions
+   * @param <R>        The type of results
+   *
+   * @return The combined result
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  public static <T extends DDatabaseTransactionType, R> R scan(
+    final DDatabaseType<?, ?, T, ?> database,
+    final DDatabaseKeyRange range,
+    final int partitions,
+    final DDatabaseRangeScanType<T, R> scanner,
+    final BinaryOperator<R> reducer)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(database, "database");
+    Objects.requireNonNull(range, "range");
+    Objects.requireNonNull(scanner, "scanner");
+    Objects.requireNonNull(reducer, "reducer");
+
+    final var ranges =
+      range.split(partitions);
+    final var task =
+      new ScanTask<>(
+        database,
+        ranges,
+        0,
+        ranges.size(),
+        scanner,
+        reducer,
+        Context.current()
+      );
+
+    try (var pool = new ForkJoinPool(ranges.size())) {
+      return pool.invoke(task);
+    } catch (final RuntimeException e) {
+      Throwable cause = e;
+      while (cause != null) {
+        if (cause instanceof final ScanFailure failure) {
+          throw failure.error;
+        }
+        cause = cause.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static final class ScanFailure extends RuntimeException
+  {
+    private final DDatabaseException error;
+
+    ScanFailure(
+      final DDatabaseException inError)
+    {
+      super(inError);
+      this.error = inError;
+    }
+  }
+
+  private static final class ScanTask<T extends DDatabaseTransactionType, R>
+    extends RecursiveTask<R>
+  {
+    private final DDatabaseType<?, ?, T, ?> database;
+    private final List<DDatabaseKeyRange> ranges;
+    private final int from;
+    private final int to;
+    private final DDatabaseRangeScanType<T, R> scanner;
+    private final BinaryOperator<R> reducer;
+    private final Context context;
+
+    ScanTask(
+      final DDatabaseType<?, ?, T, ?> inDatabase,
+      final List<DDatabaseKeyRange> inRanges,
+      final int inFrom,
+      final int inTo,
+      final DDatabaseRangeScanType<T, R> inScanner,
+      final BinaryOperator<R> inReducer,
+      final Context inContext)
+    {
+      this.database = inDatabase;
+      this.ranges = inRanges;
+      this.from = inFrom;
+      this.to = inTo;
+      this.scanner = inScanner;
+      this.reducer = inReducer;
+      this.context = inContext;
+    }
+
+    @Override
+    protected R compute()
+    {
+      if (this.to - this.from == 1) {
+        return this.scanOne(this.ranges.get(this.from));
+      }
+
+      final var middle = (this.from + this.to) >>> 1;
+      final var left =
+        new ScanTask<>(
+          this.database,
+          this.ranges,
+          this.from,
+          middle,
+          this.scanner,
+          this.reducer,
+          this.context
+        );
+      final var right =
+        new ScanTask<>(
+          this.database,
+          this.ranges,
+          middle,
+          this.to,
+          this.scanner,
+          this.reducer,
+          this.context
+        );
+
+      left.fork();
+      final var rightResult = right.compute();
+      return this.reducer.apply(left.join(), rightResult);
+    }
+
+    private R scanOne(
+      final DDatabaseKeyRange range)
+    {
+      final var options =
+        DDatabaseTransactionOptions.defaults()
+          .withMode(READ_ONLY);
+
+      try (var ignored = this.context.makeCurrent();
+           var transaction = this.database.openTransaction(options)) {
+        return this.scanner.scan(transaction, range);
+      } catch (final DDatabaseException e) {
+        throw new ScanFailure(e);
+      }
+    }
+  }
+}
@@ -35,12 +35,29 @@ public abstract class DDatabaseQueryAbstract<
   implements DDatabaseQueryType<P, R>
 {
   private final T currentTransaction;
+  private long rowCount;
 
   protected DDatabaseQueryAbstract(
     final T inTransaction)
   {
     this.currentTransaction =
       Objects.requireNonNull(inTransaction, "transaction");
+    this.rowCount = -1L;
+  }
+
+  /**
+   * Report the number of rows returned or affected by the current execution
+   * of the query. Queries that call this method from
+   * {@link #onExecute(DDatabaseTransactionType, Object)} have the row count
+   * recorded as a metric.
+   *
+   * @param rows The number of rows
+   */
+
+  protected final void recordRowCount(
+    final long rows)
+  {
+    this.rowCount = rows;
   }
 
   @Override
@@ -50,10 +67,43 @@ public abstract class DDatabaseQueryAbstract<
   {
     Objects.requireNonNull(parameters, "parameters");
 
+    if (!(this.currentTransaction
+      instanceof final DDatabaseTransactionAbstract<?, ?, ?, ?> t)) {
+      try {
+        return this.onExecute(this.currentTransaction, parameters);
+      } catch (final SQLException e) {
+        throw DDatabaseException.ofException(e);
+      }
+    }
+
+    final var deadline = t.queryStart();
+    t.recordRoundTrip();
+
+    final var metrics =
+      t.metrics();
+    final var labels =
+      DDatabaseMetrics.queryLabels(this.getClass(), t.databaseKind());
+
+    this.rowCount = -1L;
+    final var timeStart = System.nanoTime();
+    var failed = true;
     try {
-      return this.onExecute(this.currentTransaction, parameters);
+      final var result = this.onExecute(this.currentTransaction, parameters);
+      failed = false;
+      return result;
     } catch (final SQLException e) {
-      throw DDatabaseException.ofException(e);
+      throw t.queryFailed(e);
+    } finally {
+      t.queryFinish(deadline);
+
+      final var timeTaken = System.nanoTime() - timeStart;
+      metrics.queryDuration()
+        .record((double) timeTaken / 1_000_000_000.0, labels);
+      if (failed) {
+        metrics.queryErrors().add(1L, labels);
+      } else if (this.rowCount >= 0L) {
+        metrics.queryRows().record(this.rowCount, labels);
+      }
     }
   }
 
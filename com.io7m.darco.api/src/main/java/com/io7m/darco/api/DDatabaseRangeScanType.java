@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+/**
+ * A scan over one sub-range of keys, executed within its own transaction.
+ *
+ * @param <T> The type of database transactions
+ * @param <R> The type of results
+ *
+ * @see DDatabaseParallelScan
+ */
+
+@FunctionalInterface
+public interface DDatabaseRangeScanType<T extends DDatabaseTransactionType, R>
+{
+  /**
+   * Scan the given range.
+   *
+   * @param transaction The transaction
+   * @param range       The range
+   *
+   * @return The partial result for the range
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  R scan(
+    T transaction,
+    DDatabaseKeyRange range)
+    throws DDatabaseException;
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A readiness gate for a database. A database that is opened asynchronously
+ * is returned to the caller before setup and upgrades have completed; the
+ * readiness gate is completed when the database becomes usable, or failed
+ * if setup fails. The factories pass the gate to the database when it is
+ * created; databases that are opened synchronously use {@link #ready()}.
+ */
+
+public final class DDatabaseReadiness
+{
+  private static final DDatabaseReadiness READY =
+    new DDatabaseReadiness(CompletableFuture.completedFuture(null));
+
+  private final CompletableFuture<Void> future;
+
+  private DDatabaseReadiness(
+    final CompletableFuture<Void> inFuture)
+  {
+    this.future = Objects.requireNonNull(inFuture, "future");
+  }
+
+  /**
+   * @return A readiness gate that is already open
+   */
+
+  public static DDatabaseReadiness ready()
+  {
+    return READY;
+  }
+
+  /**
+   * @return A new readiness gate that is not yet open
+   */
+
+  public static DDatabaseReadiness create()
+  {
+    return new DDatabaseReadiness(new CompletableFuture<>());
+  }
+
+  /**
+   * @return A future that completes when the gate opens, or fails if setup
+   * fails
+   */
+
+  public CompletableFuture<Void> future()
+  {
+    return this.future.copy();
+  }
+
+  /**
+   * Open the gate.
+   */
+
+  public void complete()
+  {
+    this.future.complete(null);
+  }
+
+  /**
+   * Fail the gate. Callers waiting on the gate will receive an exception
+   * with the given cause.
+   *
+   * @param cause The reason setup failed
+   */
+
+  public void fail(
+    final DDatabaseException cause)
+  {
+    this.future.completeExceptionally(
+      Objects.requireNonNull(cause, "cause")
+    );
+  }
+
+  /**
+   * Wait for the gate to open.
+   *
+   * @param timeout The maximum time to wait
+   *
+   * @throws DDatabaseException If the gate does not open in time, if setup
+   *                            failed, or if the current thread is
+   *                            interrupted
+   */
+
+  public void await(
+    final Duration timeout)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    try {
+      this.future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (final TimeoutException e) {
+      throw new DDatabaseException(
+        "The database is not yet ready.",
+        e,
+        "error-database-not-ready",
+        Map.of("Timeout", timeout.toString()),
+        Optional.empty()
+      );
+    } catch (final ExecutionException | CancellationException e) {
+      final var cause =
+        DDatabaseException.ofException(
+          Objects.requireNonNullElse(e.getCause(), e)
+        );
+      throw new DDatabaseException(
+        "The database could not be set up.",
+        cause,
+        cause.errorCode(),
+        cause.attributes(),
+        cause.remediatingAction()
+      );
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw DDatabaseException.ofException(e);
+    }
+  }
+}
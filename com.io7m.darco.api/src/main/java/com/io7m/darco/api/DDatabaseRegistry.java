@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.logs.Severity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registry of the connections (and their transactions) that are currently
+ * open on a database.
+ *
+ * @see DDatabaseType#registry()
+ * @see DDatabaseWatchdogConfiguration
+ */
+
+public final class DDatabaseRegistry
+{
+  private static final AttributeKey<String> DB_SYSTEM =
+    AttributeKey.stringKey("db.system");
+  private static final AttributeKey<Long> CONNECTION_ID =
+    AttributeKey.longKey("connection.id");
+  private static final AttributeKey<String> CONNECTION_ROLE =
+    AttributeKey.stringKey("connection.role");
+  private static final AttributeKey<String> CONNECTION_OPENED_BY =
+    AttributeKey.stringKey("connection.opened_by");
+
+  private final DDatabaseTelemetryType telemetry;
+  private final DDatabaseMetrics metrics;
+  private final Attributes attributes;
+  private final int stackTraceSampling;
+  private final ConcurrentHashMap<Long, Entry> entries;
+  private final AtomicLong ids;
+
+  DDatabaseRegistry(
+    final DDatabaseTelemetryType inTelemetry,
+    final String inDatabaseKind,
+    final int inStackTraceSampling)
+  {
+    this.telemetry =
+      Objects.requireNonNull(inTelemetry, "telemetry");
+    this.metrics =
+      DDatabaseMetrics.get(inTelemetry);
+    this.attributes =
+      Attributes.of(DB_SYSTEM, inDatabaseKind);
+    this.stackTraceSampling =
+      inStackTraceSampling;
+    this.entries =
+      new ConcurrentHashMap<>();
+    this.ids =
+      new AtomicLong(0L);
+  }
+
+  /**
+   * @return A snapshot of the connections that are currently open, oldest
+   * first
+   */
+
+  public List<DDatabaseLiveConnection> liveConnections()
+  {
+    final var now = System.nanoTime();
+    final var results = new ArrayList<DDatabaseLiveConnection>();
+    for (final var entry : this.entries.values()) {
+      results.add(entry.snapshot(now));
+    }
+    results.sort(Comparator.comparing(DDatabaseLiveConnection::timeOpened));
+    return List.copyOf(results);
+  }
+
+  Entry register(
+    final String role)
+  {
+    final var id =
+      this.ids.incrementAndGet();
+
+    final List<StackTraceElement> openedBy;
+    if (this.stackTraceSampling > 0 && id % this.stackTraceSampling == 0L) {
+      openedBy = List.of(new Throwable().getStackTrace());
+    } else {
+      openedBy = List.of();
+    }
+
+    final var entry =
+      new Entry(this, id, role, openedBy);
+    this.entries.put(Long.valueOf(entry.id), entry);
+    this.metrics.connectionsOpen().add(1L, this.attributes);
+    return entry;
+  }
+
+  /*
+   * Each connection is logged at most once for being held too long, and
+   * each transaction is aborted at most once. Cancelling a transaction only
+   * interrupts a statement that is executing; aborting also closes the
+   * connection, so that a transaction that is idle but holding locks
+   * releases them.
+   */
+
+  void inspect(
+    final DDatabaseWatchdogConfiguration configuration)
+  {
+    final var now = System.nanoTime();
+    final var warnNanos = configuration.warnThreshold().toNanos();
+
+    for (final var entry : this.entries.values()) {
+      final var held = now - entry.timeOpenedNanos;
+      if (held >= warnNanos && !entry.warned) {
+        entry.warned = true;
+        this.metrics.watchdogHeldTooLong().add(1L, this.attributes);
+        this.log(
+          entry,
+          "Connection %d (role %s) has been held for %s.".formatted(
+            Long.valueOf(entry.id),
+            entry.role,
+            Duration.ofNanos(held)
+          )
+        );
+      }
+
+      final var transaction = entry.transaction;
+      if (transaction != null && configuration.cancelThreshold().isPresent()) {
+        final var open = now - entry.timeTransactionOpenedNanos;
+        final var limit = configuration.cancelThreshold().get().toNanos();
+        if (open >= limit && entry.cancelled != transaction) {
+          entry.cancelled = transaction;
+          if (transaction
+            instanceof final DDatabaseTransactionAbstract<?, ?, ?, ?> t) {
+            t.abort();
+          } else {
+            transaction.cancel();
+          }
+          this.metrics.watchdogCancelled().add(1L, this.attributes);
+          this.log(
+            entry,
+            "Aborted a transaction on connection %d (role %s) that was open for %s."
+              .formatted(
+                Long.valueOf(entry.id),
+                entry.role,
+                Duration.ofNanos(open)
+              )
+          );
+        }
+      }
+    }
+  }
+
+  private void log(
+    final Entry entry,
+    final String message)
+  {
+    final var record =
+      this.telemetry.logger()
+        .logRecordBuilder()
+        .setSeverity(Severity.WARN)
+        .setBody(message)
+        .setAllAttributes(this.attributes)
+        .setAttribute(CONNECTION_ID, Long.valueOf(entry.id))
+        .setAttribute(CONNECTION_ROLE, entry.role);
+
+    if (!entry.openedBy.isEmpty()) {
+      final var text = new StringBuilder(256);
+      for (final var element : entry.openedBy) {
+        text.append("  at ");
+        text.append(element);
+        text.append('\n');
+      }
+      record.setAttribute(CONNECTION_OPENED_BY, text.toString());
+    }
+    record.emit();
+  }
+
+  static final class Entry implements AutoCloseable
+  {
+    private final DDatabaseRegistry registry;
+    private final long id;
+    private final String role;
+    private final Instant timeOpened;
+    private final long timeOpenedNanos;
+    private final List<StackTraceElement> openedBy;
+    private volatile DDatabaseTransactionType transaction;
+    private volatile Instant timeTransactionOpened;
+    private volatile long timeTransactionOpenedNanos;
+    private volatile boolean warned;
+    private volatile DDatabaseTransactionType cancelled;
+
+    private Entry(
+      final DDatabaseRegistry inRegistry,
+      final long inId,
+      final String inRole,
+      final List<StackTraceElement> inOpenedBy)
+    {
+      this.registry = inRegistry;
+      this.id = inId;
+      this.role = inRole;
+      this.openedBy = inOpenedBy;
+      this.timeOpened = Instant.now();
+      this.timeOpenedNanos = System.nanoTime();
+    }
+
+    void transactionOpened(
+      final DDatabaseTransactionType newTransaction)
+    {
+      this.timeTransactionOpened = Instant.now();
+      this.timeTransactionOpenedNanos = System.nanoTime();
+      this.transaction = newTransaction;
+    }
+
+    void transactionClosed(
+      final DDatabaseTransactionType oldTransaction)
+    {
+      if (this.transaction == oldTransaction) {
+        this.transaction = null;
+      }
+    }
+
+    private DDatabaseLiveConnection snapshot(
+      final long now)
+    {
+      return new DDatabaseLiveConnection(
+        this.id,
+        this.role,
+        this.timeOpened,
+        Duration.ofNanos(now - this.timeOpenedNanos),
+        this.transaction == null
+          ? Optional.empty()
+          : Optional.of(this.timeTransactionOpened),
+        this.openedBy
+      );
+    }
+
+    @Override
+    public void close()
+    {
+      if (this.registry.entries.remove(Long.valueOf(this.id)) != null) {
+        this.registry.metrics.connectionsOpen()
+          .add(-1L, this.registry.attributes);
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * A summary of a database schema: the latest schema version, and the
+ * checksum of the schema definition from which it was derived. Factories
+ * use summaries to avoid parsing the schema definition when the database
+ * is already at the latest version.
+ *
+ * @param latestVersion The latest schema version
+ * @param checksum      The lowercase hexadecimal SHA-256 checksum of the
+ *                      schema definition
+ *
+ * @see #checksumOf(byte[])
+ */
+
+public record DDatabaseSchemaSummary(
+  BigInteger latestVersion,
+  String checksum)
+{
+  /**
+   * A summary of a database schema.
+   *
+   * @param latestVersion The latest schema version
+   * @param checksum      The lowercase hexadecimal SHA-256 checksum of the
+   *                      schema definition
+   */
+
+  public DDatabaseSchemaSummary
+  {
+    Objects.requireNonNull(latestVersion, "latestVersion");
+    Objects.requireNonNull(checksum, "checksum");
+  }
+
+  /**
+   * Calculate the checksum of the given schema definition.
+   *
+   * @param schema The schema definition
+   *
+   * @return The lowercase hexadecimal SHA-256 checksum
+   */
+
+  public static String checksumOf(
+    final byte[] schema)
+  {
+    Objects.requireNonNull(schema, "schema");
+
+    try {
+      return HexFormat.of()
+        .formatHex(MessageDigest.getInstance("SHA-256").digest(schema));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import com.io7m.jmulticlose.core.CloseableCollection;
+import com.io7m.jmulticlose.core.CloseableCollectionType;
+import io.opentelemetry.context.Context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A set of databases of the same kind that together hold one logically
+ * partitioned data set. Each shard key is assigned to exactly one shard
+ * using consistent hashing, and so appending a shard to the end of the list
+ * of shard configurations moves only a fraction of the keys to the new
+ * shard. The order of shard configurations must therefore not change between
+ * runs.
+ *
+ * @param <C> The type of database configuration
+ * @param <N> The type of database connections
+ * @param <T> The type of database transactions
+ * @param <Q> The precise type of database query providers
+ * @param <D> The type of database
+ */
+
+public final class DDatabaseSharded<
+  C extends DDatabaseConfigurationType,
+  N extends DDatabaseConnectionType<T>,
+  T extends DDatabaseTransactionType,
+  Q extends DDatabaseQueryProviderType<T, ?, ?, ?>,
+  D extends DDatabaseType<C, N, T, Q>>
+  implements AutoCloseable
+{
+  private static final int VIRTUAL_NODES_PER_SHARD = 128;
+
+  private final List<D> shards;
+  private final long[] ringPoints;
+  private final int[] ringShards;
+  private final ExecutorService executor;
+  private final CloseableCollectionType<DDatabaseException> resources;
+
+  private DDatabaseSharded(
+    final List<D> inShards,
+    final CloseableCollectionType<DDatabaseException> inResources)
+  {
+    this.shards =
+      List.copyOf(inShards);
+    this.resources =
+      Objects.requireNonNull(inResources, "resources");
+
+    final var ring = new TreeMap<Long, Integer>();
+    for (int shard = 0; shard < this.shards.size(); ++shard) {
+      for (int node = 0; node < VIRTUAL_NODES_PER_SHARD; ++node) {
+        ring.put(
+          Long.valueOf(hash("shard:%d:%d".formatted(shard, node))),
+          Integer.valueOf(shard)
+        );
+      }
+    }
+
+    this.ringPoints = new long[ring.size()];
+    this.ringShards = new int[ring.size()];
+    var index = 0;
+    for (final var entry : ring.entrySet()) {
+      this.ringPoints[index] = entry.getKey().longValue();
+      this.ringShards[index] = entry.getValue().intValue();
+      ++index;
+    }
+
+    this.executor =
+      this.resources.add(
+        Executors.newFixedThreadPool(
+          this.shards.size(),
+          Thread.ofPlatform()
+            .name("com.io7m.darco.shard-", 0L)
+            .daemon(true)
+            .factory()
+        )
+      );
+  }
+
+  /**
+   * Open a sharded database. One database is opened for each of the given
+   * configurations using the given factory, and the databases are opened
+   * (and therefore created and upgraded) in parallel. If any shard fails to
+   * open, the shards that were opened are closed again. Startup messages
+   * may be delivered from multiple threads, and are prefixed with the index
+   * of the shard to which they refer.
+   *
+   * @param factory         The database factory
+   * @param configurations  The configuration of each shard
+   * @param startupMessages A function that will receive startup messages
+   * @param <C>             The type of database configuration
+   * @param <N>             The type of database connections
+   * @param <T>             The type of database transactions
+   * @param <Q>             The precise type of database query providers
+   * @param <D>             The type of database
+   *
+   * @return A sharded database
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  public static <
+    C extends DDatabaseConfigurationType,
+    N extends DDatabaseConnectionType<T>,
+    T extends DDatabaseTransactionType,
+    Q extends DDatabaseQueryProviderType<T, ?, ?, ?>,
+    D extends DDatabaseType<C, N, T, Q>>
+  DDatabaseSharded<C, N, T, Q, D> open(
+    final DDatabaseFactoryType<C, N, T, Q, D> factory,
+    final List<C> configurations,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(factory, "factory");
+    Objects.requireNonNull(configurations, "configurations");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    if (configurations.isEmpty()) {
+      throw new DDatabaseException(
+        "At least one shard is required.",
+        "error-shards-empty",
+        Map.of(),
+        Optional.empty()
+      );
+    }
+
+    final var resources =
+      createCloseableResources();
+    final var tasks =
+      new ArrayList<Callable<D>>(configurations.size());
+
+    for (int index = 0; index < configurations.size(); ++index) {
+      final var shard = index;
+      final var configuration = configurations.get(index);
+      tasks.add(() -> {
+        return factory.open(configuration, message -> {
+          startupMessages.accept("[shard %d] %s".formatted(shard, message));
+        });
+      });
+    }
+
+    try {
+      final List<D> shards;
+      try (var setup = Executors.newFixedThreadPool(configurations.size())) {
+        shards = gather(setup, tasks, resources::add);
+      }
+      return new DDatabaseSharded<>(shards, resources);
+    } catch (final DDatabaseException e) {
+      try {
+        resources.close();
+      } catch (final DDatabaseException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+  }
+
+  /*
+   * Run the given tasks and wait for all of them to finish. Each successful
+   * result is passed to the receiver (even if other tasks fail), and the
+   * first failure is raised with the others attached as suppressed
+   * exceptions.
+   */
+
+  private static <R> List<R> gather(
+    final ExecutorService executor,
+    final List<Callable<R>> tasks,
+    final Consumer<R> receiver)
+    throws DDatabaseException
+  {
+    final var futures = new ArrayList<Future<R>>(tasks.size());
+    for (final var task : tasks) {
+      futures.add(executor.submit(Context.current().wrap(task)));
+    }
+
+    final var results = new ArrayList<R>(futures.size());
+    DDatabaseException failure = null;
+    for (int index = 0; index < futures.size(); ++index) {
+      try {
+        final var result = futures.get(index).get();
+        receiver.accept(result);
+        results.add(result);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.forEach(f -> f.cancel(true));
+        throw DDatabaseException.ofException(e);
+      } catch (final ExecutionException e) {
+        final var error = shardFailed(index, e.getCause());
+        if (failure == null) {
+          failure = error;
+        } else {
+          failure.addSuppressed(error);
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+    return results;
+  }
+
+  private static DDatabaseException shardFailed(
+    final int shard,
+    final Throwable cause)
+  {
+    final var base =
+      DDatabaseException.ofException(cause);
+    final var attributes =
+      new HashMap<>(base.attributes());
+    attributes.put("Shard", Integer.toString(shard));
+
+    return new DDatabaseException(
+      base.getMessage(),
+      base,
+      base.errorCode(),
+      attributes,
+      base.remediatingAction()
+    );
+  }
+
+  /*
+   * Shard keys are hashed on every routed call, and so the hash is a cheap,
+   * non-cryptographic one that does not allocate: FNV-1a over the UTF-16
+   * code units of the text, followed by the MurmurHash3 64-bit finalizer so
+   * that keys differing only in their last characters are spread across
+   * the whole ring. The function must not change between releases, as it
+   * determines which shard holds each key.
+   */
+
+  private static long hash(
+    final String text)
+  {
+    var h = 0xcbf29ce484222325L;
+    for (int index = 0; index < text.length(); ++index) {
+      h ^= text.charAt(index);
+      h *= 0x100000001b3L;
+    }
+
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static CloseableCollectionType<DDatabaseException> createCloseableResources()
+  {
+    return CloseableCollection.create(() -> {
+      return new DDatabaseException(
+        "Closing a resource failed.",
+        "error-resource-closing",
+        Map.of(),
+        Optional.empty()
+      );
+    });
+  }
+
+  /**
+   * @return The shards, in the order of their configurations
+   */
+
+  public List<D> shards()
+  {
+    return this.shards;
+  }
+
+  /**
+   * Determine the shard responsible for the given shard key.
+   *
+   * @param shardKey The shard key
+   *
+   * @return The index of the shard
+   */
+
+  public int shardIndexFor(
+    final String shardKey)
+  {
+    Objects.requireNonNull(shardKey, "shardKey");
+
+    var index = Arrays.binarySearch(this.ringPoints, hash(shardKey));
+    if (index < 0) {
+      index = -(index + 1);
+    }
+    if (index == this.ringPoints.length) {
+      index = 0;
+    }
+    return this.ringShards[index];
+  }
+
+  /**
+   * Determine the shard responsible for the given shard key.
+   *
+   * @param shardKey The shard key
+   *
+   * @return The shard
+   */
+
+  public D shardFor(
+    final String shardKey)
+  {
+    return this.shards.get(this.shardIndexFor(shardKey));
+  }
+
+  /**
+   * Open a transaction on the shard responsible for the given shard key.
+   *
+   * @param shardKey The shard key
+   *
+   * @return A database transaction
+   *
+   * @throws DDatabaseException On errors
+   *
+   * @see DDatabaseType#openTransaction()
+   */
+
+  public T openTransaction(
+    final String shardKey)
+    throws DDatabaseException
+  {
+    return this.shardFor(shardKey).openTransaction();
+  }
+
+  /**
+   * Open a transaction with the given options on the shard responsible for
+   * the given shard key.
+   *
+   * @param shardKey The shard key
+   * @param options  The transaction options
+   *
+   * @return A database transaction
+   *
+   * @throws DDatabaseException On errors
+   *
+   * @see DDatabaseType#openTransaction(DDatabaseTransactionOptions)
+   */
+
+  public T openTransaction(
+    final String shardKey,
+    final DDatabaseTransactionOptions options)
+    throws DDatabaseException
+  {
+    return this.shardFor(shardKey).openTransaction(options);
+  }
+
+  /**
+   * Execute a single query on every shard concurrently, and return the
+   * results in shard order. The query is executed on each shard as if by
+   * {@link DDatabaseType#queryOnce(Class, Object)}, and so is intended for
+   * reads. If the query fails on any shard, the first failure is raised
+   * once the query has finished on all shards.
+   *
+   * @param queryClass The query type
+   * @param parameters The query parameters
+   * @param <P>        The query parameter type
+   * @param <R>        The query return type
+   * @param <S>        The query type
+   *
+   * @return The query results of each shard
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  public <P, R, S extends DDatabaseQueryType<P, R>> List<R> queryAll(
+    final Class<S> queryClass,
+    final P parameters)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(queryClass, "queryClass");
+
+    final var tasks = new ArrayList<Callable<R>>(this.shards.size());
+    for (final var shard : this.shards) {
+      tasks.add(() -> shard.queryOnce(queryClass, parameters));
+    }
+    return gather(this.executor, tasks, r -> { });
+  }
+
+  /**
+   * Execute a single query on every shard concurrently, and merge the
+   * results.
+   *
+   * @param queryClass The query type
+   * @param parameters The query parameters
+   * @param merger     A function that merges the results of each shard
+   * @param <P>        The query parameter type
+   * @param <R>        The query return type
+   * @param <S>        The query type
+   * @param <A>        The type of merged results
+   *
+   * @return The merged results
+   *
+   * @throws DDatabaseException On errors
+   *
+   * @see #queryAll(Class, Object)
+   */
+
+  public <P, R, S extends DDatabaseQueryType<P, R>, A> A queryAll(
+    final Class<S> queryClass,
+    final P parameters,
+    final Function<? super List<R>, A> merger)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(merger, "merger");
+    return merger.apply(this.queryAll(queryClass, parameters));
+  }
+
+  @Override
+  public void close()
+    throws DDatabaseException
+  {
+    this.resources.close();
+  }
+}
@@ -19,16 +19,25 @@ package com.io7m.darco.api;
 
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 
+import static com.io7m.darco.api.DDatabaseTransactionState.CLEAN;
+import static com.io7m.darco.api.DDatabaseTransactionState.COMMITTED;
+import static com.io7m.darco.api.DDatabaseTransactionState.DIRTY;
+import static com.io7m.darco.api.DDatabaseTransactionState.ROLLED_BACK;
 import static io.opentelemetry.api.trace.SpanKind.INTERNAL;
 
 /**
@@ -54,6 +63,19 @@ public abstract class DDatabaseTransactionAbstract<
   private final Map<Class<?>, Q> queries;
   private final CloseableCollectionType<DDatabaseException> resources;
   private final HashMap<Class<?>, Object> values;
+  private final DDatabaseMetrics metrics;
+  private final DDatabaseMetrics.TransactionLabels labels;
+  private long timeStarted;
+  private DDatabaseTransactionState state;
+  private long roundTrips;
+  private Optional<Duration> timeout;
+  private Optional<Duration> queryTimeout;
+  private DDatabaseTransactionOptions options;
+  private boolean beginPending;
+  private volatile boolean cancelled;
+  private volatile boolean aborted;
+  private volatile boolean timedOut;
+  private volatile boolean queryTimedOut;
 
   protected DDatabaseTransactionAbstract(
     final DDatabaseTransactionCloseBehavior inCloseBehavior,
@@ -91,8 +113,169 @@ public abstract class DDatabaseTransactionAbstract<
       }
     }
 
-    this.resources.add(this::rollback);
+    this.resources.add(this::rollbackIfDirty);
     this.values = new HashMap<>();
+    this.state = CLEAN;
+    this.roundTrips = 0L;
+    this.timeout = Optional.empty();
+    this.queryTimeout = Optional.empty();
+    this.options = DDatabaseTransactionOptions.defaults();
+
+    this.metrics =
+      DDatabaseMetrics.get(this.configuration.telemetry());
+    this.labels =
+      DDatabaseMetrics.transactionLabels(this.configuration.kind().value());
+    this.metrics.transactionsOpened().add(1L, this.labels.opened());
+    this.timeStarted = System.nanoTime();
+  }
+
+  /**
+   * Apply the given options to the transaction. This is called exactly once,
+   * immediately after the transaction has been created and before any other
+   * statements have been executed.
+   *
+   * @param inOptions The transaction options
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  final void begin(
+    final DDatabaseTransactionOptions inOptions)
+    throws DDatabaseException
+  {
+    if (Objects.equals(inOptions, DDatabaseTransactionOptions.defaults())) {
+      final boolean required;
+      try {
+        required = this.isBeginRequiredForDefaults();
+      } catch (final SQLException e) {
+        this.transactionSpan.recordException(e);
+        throw DDatabaseException.ofException(e);
+      }
+      if (!required) {
+        return;
+      }
+    }
+
+    this.options = inOptions;
+    this.timeout = inOptions.timeout();
+    this.queryTimeout = inOptions.queryTimeout();
+
+    if (this.timeout.isPresent()) {
+      final var deadline =
+        DDatabaseDeadlines.schedule(this.timeout.get(), this::expire);
+      this.resources.add(() -> deadline.cancel(false));
+    }
+
+    this.beginPending = true;
+    this.beginIfPending();
+  }
+
+  /*
+   * The options apply to every unit of work in the transaction, but the
+   * database drivers start a fresh transaction with the default settings
+   * after each commit or rollback. The options are therefore re-applied
+   * lazily, before the next query or savepoint, so that a transaction that
+   * is closed immediately after committing does not start (and then have
+   * to roll back) a new unit of work.
+   */
+
+  private void beginIfPending()
+    throws DDatabaseException
+  {
+    if (!this.beginPending) {
+      return;
+    }
+
+    this.beginPending = false;
+    try {
+      this.onBegin(this.options);
+    } catch (final SQLException e) {
+      this.transactionSpan.recordException(e);
+      throw DDatabaseException.ofException(e);
+    }
+  }
+
+  /**
+   * Apply the given options to the current unit of work. This is called
+   * before any other statements have been executed in the unit of work:
+   * once when the transaction is opened, and again before the first query
+   * or savepoint following each commit or rollback. It is not called at all
+   * if the options are equal to {@link DDatabaseTransactionOptions#defaults()}
+   * unless {@link #isBeginRequiredForDefaults()} returns {@code true}.
+   * Implementations should call {@link #recordRoundTrip()} for each
+   * statement they send to the database. The default implementation does
+   * nothing.
+   *
+   * @param transactionOptions The transaction options
+   *
+   * @throws SQLException       On errors
+   * @throws DDatabaseException On errors
+   */
+
+  protected void onBegin(
+    final DDatabaseTransactionOptions transactionOptions)
+    throws SQLException, DDatabaseException
+  {
+
+  }
+
+  /**
+   * Determine whether {@link #onBegin(DDatabaseTransactionOptions)} must be
+   * called for a transaction opened with the default options, typically
+   * because a previous transaction left connection-level settings that must
+   * be undone. This is called once when the transaction is opened. The
+   * default implementation returns {@code false}.
+   *
+   * @return {@code true} if the default options must be applied explicitly
+   *
+   * @throws SQLException On errors
+   */
+
+  protected boolean isBeginRequiredForDefaults()
+    throws SQLException
+  {
+    return false;
+  }
+
+  /**
+   * Determine whether the given exception was raised by the database itself
+   * because the transaction or query exceeded one of the deadlines given in
+   * the transaction options. The default implementation returns
+   * {@code false}.
+   *
+   * @param e The exception
+   *
+   * @return {@code true} if the exception indicates a deadline was exceeded
+   */
+
+  protected boolean isDeadlineException(
+    final SQLException e)
+  {
+    return false;
+  }
+
+  /**
+   * Determine whether the database itself enforces the query timeout given
+   * in the transaction options. If it does, no client-side deadline is
+   * scheduled for each query, and the database's own errors are identified
+   * with {@link #isDeadlineException(SQLException)}. The default
+   * implementation returns {@code false}.
+   *
+   * @return {@code true} if the database enforces query timeouts
+   */
+
+  protected boolean isQueryTimeoutEnforcedByDatabase()
+  {
+    return false;
+  }
+
+  /**
+   * @return The options with which the transaction was opened
+   */
+
+  protected final DDatabaseTransactionOptions options()
+  {
+    return this.options;
   }
 
   @Override
@@ -131,9 +314,255 @@ public abstract class DDatabaseTransactionAbstract<
   @Override
   public final Connection connection()
   {
+    this.state = DIRTY;
     return this.connection.connection();
   }
 
+  /**
+   * Interrupt whatever statement is currently executing on the given
+   * connection. This is called on a thread dedicated to cancellations
+   * (never the caller of {@link #cancel()}, nor the thread that enforces
+   * deadlines) when the transaction is cancelled or exceeds one of its
+   * deadlines, and so it may block; subsequent queries fail regardless of
+   * whether anything was interrupted. The default implementation does
+   * nothing.
+   *
+   * @param c The transaction's connection
+   *
+   * @throws SQLException On errors
+   */
+
+  protected void onCancel(
+    final Connection c)
+    throws SQLException
+  {
+
+  }
+
+  /**
+   * Forcibly end the transaction by closing the given connection, so that
+   * the database releases any locks held by the transaction even if nothing
+   * is executing on the connection. This is called on a thread dedicated to
+   * cancellations, immediately after {@link #onCancel(Connection)}, when the
+   * connection watchdog gives up on the transaction, and so it may block.
+   * The default implementation calls {@link Connection#abort(Executor)}.
+   *
+   * @param c The transaction's connection
+   *
+   * @throws SQLException On errors
+   *
+   * @see DDatabaseWatchdogConfiguration#cancelThreshold()
+   */
+
+  protected void onAbort(
+    final Connection c)
+    throws SQLException
+  {
+    c.abort(Runnable::run);
+  }
+
+  /**
+   * @return {@code true} if the transaction's connection has been aborted
+   */
+
+  protected final boolean isAborted()
+  {
+    return this.aborted;
+  }
+
+  /**
+   * Cancel the transaction and abort its connection. The connection is
+   * aborted on a thread dedicated to cancellations.
+   */
+
+  final void abort()
+  {
+    this.aborted = true;
+    this.cancelled = true;
+    this.transactionSpan.addEvent("Aborted");
+    DDatabaseDeadlines.execute(() -> {
+      this.runCancel();
+      try {
+        this.onAbort(this.connection.connection());
+      } catch (final SQLException e) {
+        this.transactionSpan.recordException(e);
+      }
+    });
+  }
+
+  private void interrupt()
+  {
+    DDatabaseDeadlines.execute(this::runCancel);
+  }
+
+  private void runCancel()
+  {
+    try {
+      this.onCancel(this.connection.connection());
+    } catch (final SQLException e) {
+      this.transactionSpan.recordException(e);
+    }
+  }
+
+  @Override
+  public final void cancel()
+  {
+    this.cancelled = true;
+    this.transactionSpan.addEvent("Cancelled");
+    this.interrupt();
+  }
+
+  private void expire()
+  {
+    this.timedOut = true;
+    this.transactionSpan.addEvent("TimedOut");
+    this.interrupt();
+  }
+
+  /**
+   * Start the deadline for a query, if queries have a timeout.
+   *
+   * @return The scheduled deadline, or {@code null}
+   *
+   * @throws DDatabaseException If the transaction was cancelled or timed out
+   */
+
+  final ScheduledFuture<?> queryStart()
+    throws DDatabaseException
+  {
+    if (this.timedOut) {
+      throw this.errorTimedOut(Optional.empty());
+    }
+    if (this.cancelled) {
+      throw this.errorCancelled(Optional.empty());
+    }
+
+    this.beginIfPending();
+    this.queryTimedOut = false;
+    if (this.queryTimeout.isPresent()
+        && !this.isQueryTimeoutEnforcedByDatabase()) {
+      return DDatabaseDeadlines.schedule(this.queryTimeout.get(), () -> {
+        this.queryTimedOut = true;
+        this.transactionSpan.addEvent("QueryTimedOut");
+        this.interrupt();
+      });
+    }
+    return null;
+  }
+
+  /**
+   * Finish the deadline for a query.
+   *
+   * @param deadline The deadline returned by {@link #queryStart()}
+   */
+
+  final void queryFinish(
+    final ScheduledFuture<?> deadline)
+  {
+    if (deadline != null) {
+      deadline.cancel(false);
+    }
+  }
+
+  /**
+   * Translate an exception raised by a query, taking into account whether
+   * the transaction or query was cancelled or timed out.
+   *
+   * @param e The exception
+   *
+   * @return The translated exception
+   */
+
+  final DDatabaseException queryFailed(
+    final SQLException e)
+  {
+    if (this.timedOut || this.queryTimedOut) {
+      return this.errorTimedOut(Optional.of(e));
+    }
+    if (this.cancelled) {
+      return this.errorCancelled(Optional.of(e));
+    }
+    if (this.isDeadlineException(e)) {
+      return this.errorTimedOut(Optional.of(e));
+    }
+    return DDatabaseException.ofException(e);
+  }
+
+  private DDatabaseException errorTimedOut(
+    final Optional<SQLException> cause)
+  {
+    final var attributes = new HashMap<String, String>(2);
+    this.timeout.ifPresent(d -> {
+      attributes.put("TransactionTimeout", d.toString());
+    });
+    this.queryTimeout.ifPresent(d -> {
+      attributes.put("QueryTimeout", d.toString());
+    });
+
+    return error(
+      "The operation exceeded its deadline.",
+      cause,
+      "error-database-timeout",
+      Map.copyOf(attributes)
+    );
+  }
+
+  private DDatabaseException errorCancelled(
+    final Optional<SQLException> cause)
+  {
+    return error(
+      "The transaction was cancelled.",
+      cause,
+      "error-database-cancelled",
+      Map.of()
+    );
+  }
+
+  private static DDatabaseException error(
+    final String message,
+    final Optional<SQLException> cause,
+    final String errorCode,
+    final Map<String, String> attributes)
+  {
+    if (cause.isPresent()) {
+      return new DDatabaseException(
+        message,
+        cause.get(),
+        errorCode,
+        attributes,
+        Optional.empty()
+      );
+    }
+    return new DDatabaseException(
+      message,
+      errorCode,
+      attributes,
+      Optional.empty()
+    );
+  }
+
+  @Override
+  public final DDatabaseTransactionState state()
+  {
+    return this.state;
+  }
+
+  @Override
+  public final long roundTrips()
+  {
+    return this.roundTrips;
+  }
+
+  /**
+   * Record that a round trip has been made to the database on behalf of
+   * this transaction.
+   */
+
+  protected final void recordRoundTrip()
+  {
+    ++this.roundTrips;
+  }
+
   @Override
   public final Span createSubSpan(
     final String name)
@@ -144,7 +573,7 @@ public abstract class DDatabaseTransactionAbstract<
       .tracer()
       .spanBuilder(name)
       .setParent(Context.current().with(this.transactionSpan))
-      .setAttribute("db.system", DDatabaseKinds.sqlite().value())
+      .setAttribute("db.system", this.configuration.kind().value())
       .setSpanKind(INTERNAL)
       .startSpan();
   }
@@ -186,8 +615,104 @@ public abstract class DDatabaseTransactionAbstract<
   public final void rollback()
     throws DDatabaseException
   {
+    final var wasDirty = this.state == DIRTY;
+    if (wasDirty && !this.aborted) {
+      try {
+        final var c = this.connection.connection();
+        if (!c.getAutoCommit()) {
+          this.recordRoundTrip();
+          c.rollback();
+        }
+      } catch (final SQLException e) {
+        this.transactionSpan.recordException(e);
+        throw DDatabaseException.ofException(e);
+      }
+    }
+    this.state = ROLLED_BACK;
+    this.beginPending =
+      !Objects.equals(this.options, DDatabaseTransactionOptions.defaults());
+
+    /*
+     * A rollback of a transaction that has done no work is not counted, so
+     * that the defensive rollbacks performed by callers do not inflate the
+     * rollback metrics.
+     */
+
+    if (wasDirty) {
+      this.recordCompletion(this.labels.rolledBack());
+    }
+  }
+
+  @Override
+  public final void commit()
+    throws DDatabaseException
+  {
+    if (this.aborted) {
+      throw this.errorCancelled(Optional.empty());
+    }
+    if (this.state == DIRTY) {
+      try {
+        final var c = this.connection.connection();
+        if (!c.getAutoCommit()) {
+          this.recordRoundTrip();
+          c.commit();
+        }
+      } catch (final SQLException e) {
+        this.transactionSpan.recordException(e);
+        throw DDatabaseException.ofException(e);
+      }
+    }
+    this.state = COMMITTED;
+    this.beginPending =
+      !Objects.equals(this.options, DDatabaseTransactionOptions.defaults());
+    this.recordCompletion(this.labels.committed());
+  }
+
+  /*
+   * Work may continue on a transaction after a commit or rollback, and so
+   * the duration of each unit of work is measured from the end of the
+   * previous one.
+   */
+
+  private void recordCompletion(
+    final Attributes outcome)
+  {
+    final var timeNow = System.nanoTime();
+    this.metrics.transactionsCompleted().add(1L, outcome);
+    final var timeTaken = timeNow - this.timeStarted;
+    this.metrics.transactionDuration()
+      .record((double) timeTaken / 1_000_000_000.0, outcome);
+    this.timeStarted = timeNow;
+  }
+
+  /**
+   * @return The kind of database on which this transaction is open
+   */
+
+  final String databaseKind()
+  {
+    return this.configuration.kind().value();
+  }
+
+  /**
+   * @return The metric instruments for this transaction
+   */
+
+  final DDatabaseMetrics metrics()
+  {
+    return this.metrics;
+  }
+
+  @Override
+  public final Savepoint savepoint()
+    throws DDatabaseException
+  {
+    this.beginIfPending();
+
     try {
-      this.connection.connection().rollback();
+      final var c = this.connection();
+      this.recordRoundTrip();
+      return c.setSavepoint();
     } catch (final SQLException e) {
       this.transactionSpan.recordException(e);
       throw DDatabaseException.ofException(e);
@@ -195,17 +720,72 @@ public abstract class DDatabaseTransactionAbstract<
   }
 
   @Override
-  public final void commit()
+  public final void rollbackTo(
+    final Savepoint savepoint)
     throws DDatabaseException
   {
+    Objects.requireNonNull(savepoint, "savepoint");
+
     try {
-      this.connection.connection().commit();
+      final var c = this.connection();
+      this.recordRoundTrip();
+      c.rollback(savepoint);
     } catch (final SQLException e) {
       this.transactionSpan.recordException(e);
       throw DDatabaseException.ofException(e);
     }
   }
 
+  @Override
+  public final void release(
+    final Savepoint savepoint)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(savepoint, "savepoint");
+
+    try {
+      final var c = this.connection();
+      this.recordRoundTrip();
+      c.releaseSavepoint(savepoint);
+    } catch (final SQLException e) {
+      this.transactionSpan.recordException(e);
+      throw DDatabaseException.ofException(e);
+    }
+  }
+
+  @Override
+  public final <R> R withSavepoint(
+    final DDatabaseSavepointScopeType<R> scope)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(scope, "scope");
+
+    final var savepoint = this.savepoint();
+    final R result;
+    try {
+      result = scope.execute();
+    } catch (final DDatabaseException | RuntimeException e) {
+      try {
+        this.rollbackTo(savepoint);
+        this.release(savepoint);
+      } catch (final DDatabaseException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+
+    this.release(savepoint);
+    return result;
+  }
+
+  private void rollbackIfDirty()
+    throws DDatabaseException
+  {
+    if (this.state == DIRTY) {
+      this.rollback();
+    }
+  }
+
   @Override
   public final String toString()
   {
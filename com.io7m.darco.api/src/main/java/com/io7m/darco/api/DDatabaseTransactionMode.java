@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+/**
+ * The mode of a transaction.
+ */
+
+public enum DDatabaseTransactionMode
+{
+  /**
+   * The transaction may read and write, and the database acquires locks as
+   * they are needed. On SQLite, this corresponds to a {@code DEFERRED}
+   * transaction: a transaction that reads and then writes must upgrade its
+   * lock when it first writes, and may fail with {@code SQLITE_BUSY} at that
+   * point if another connection is writing.
+   */
+
+  DEFAULT,
+
+  /**
+   * The transaction is declared to write. On SQLite, this corresponds to an
+   * {@code IMMEDIATE} transaction: the write lock is acquired when the
+   * transaction begins, waiting according to the configured busy timeout if
+   * another connection holds it, and so the transaction cannot fail later
+   * due to lock upgrades.
+   */
+
+  WRITE,
+
+  /**
+   * The transaction is declared to only read. On PostgreSQL, this
+   * corresponds to a {@code READ ONLY} transaction, and any attempt to
+   * write fails. On SQLite, deferred transactions only ever take shared
+   * locks until they first write, and so this is equivalent to
+   * {@link #DEFAULT}.
+   */
+
+  READ_ONLY
+}
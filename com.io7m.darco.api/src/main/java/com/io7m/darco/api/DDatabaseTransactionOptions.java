@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.io7m.darco.api.DDatabaseDurability.DURABLE;
+import static com.io7m.darco.api.DDatabaseTransactionMode.DEFAULT;
+
+/**
+ * The options used to open a transaction.
+ *
+ * @param isolationLevel The isolation level, if the database default should
+ *                       not be used
+ * @param durability     The durability of the transaction
+ * @param mode           The transaction mode
+ * @param timeout        The maximum duration of the transaction, measured
+ *                       from when it begins
+ * @param queryTimeout   The maximum duration of each query executed within
+ *                       the transaction
+ */
+
+public record DDatabaseTransactionOptions(
+  Optional<DDatabaseIsolationLevel> isolationLevel,
+  DDatabaseDurability durability,
+  DDatabaseTransactionMode mode,
+  Optional<Duration> timeout,
+  Optional<Duration> queryTimeout)
+{
+  private static final DDatabaseTransactionOptions DEFAULTS =
+    new DDatabaseTransactionOptions(
+      Optional.empty(),
+      DURABLE,
+      DEFAULT,
+      Optional.empty(),
+      Optional.empty()
+    );
+
+  /**
+   * The options used to open a transaction.
+   *
+   * @param isolationLevel The isolation level, if the database default should
+   *                       not be used
+   * @param durability     The durability of the transaction
+   * @param mode           The transaction mode
+   * @param timeout        The maximum duration of the transaction, measured
+   *                       from when it begins
+   * @param queryTimeout   The maximum duration of each query executed within
+   *                       the transaction
+   */
+
+  public DDatabaseTransactionOptions
+  {
+    Objects.requireNonNull(isolationLevel, "isolationLevel");
+    Objects.requireNonNull(durability, "durability");
+    Objects.requireNonNull(mode, "mode");
+    Objects.requireNonNull(timeout, "timeout");
+    Objects.requireNonNull(queryTimeout, "queryTimeout");
+  }
+
+  /**
+   * @return The default transaction options
+   */
+
+  public static DDatabaseTransactionOptions defaults()
+  {
+    return DEFAULTS;
+  }
+
+  /**
+   * @param level The isolation level
+   *
+   * @return These options with the given isolation level
+   */
+
+  public DDatabaseTransactionOptions withIsolationLevel(
+    final DDatabaseIsolationLevel level)
+  {
+    return new DDatabaseTransactionOptions(
+      Optional.of(level),
+      this.durability,
+      this.mode,
+      this.timeout,
+      this.queryTimeout
+    );
+  }
+
+  /**
+   * @param newDurability The durability
+   *
+   * @return These options with the given durability
+   */
+
+  public DDatabaseTransactionOptions withDurability(
+    final DDatabaseDurability newDurability)
+  {
+    return new DDatabaseTransactionOptions(
+      this.isolationLevel,
+      newDurability,
+      this.mode,
+      this.timeout,
+      this.queryTimeout
+    );
+  }
+
+  /**
+   * @param newMode The transaction mode
+   *
+   * @return These options with the given transaction mode
+   */
+
+  public DDatabaseTransactionOptions withMode(
+    final DDatabaseTransactionMode newMode)
+  {
+    return new DDatabaseTransactionOptions(
+      this.isolationLevel,
+      this.durability,
+      newMode,
+      this.timeout,
+      this.queryTimeout
+    );
+  }
+
+  /**
+   * A transaction that is still open when the timeout elapses has any
+   * running statement cancelled, and subsequent queries fail.
+   *
+   * @param newTimeout The maximum duration of the transaction
+   *
+   * @return These options with the given transaction timeout
+   */
+
+  public DDatabaseTransactionOptions withTimeout(
+    final Duration newTimeout)
+  {
+    return new DDatabaseTransactionOptions(
+      this.isolationLevel,
+      this.durability,
+      this.mode,
+      Optional.of(newTimeout),
+      this.queryTimeout
+    );
+  }
+
+  /**
+   * A query that is still running when the timeout elapses is cancelled.
+   *
+   * @param newQueryTimeout The maximum duration of each query
+   *
+   * @return These options with the given query timeout
+   */
+
+  public DDatabaseTransactionOptions withQueryTimeout(
+    final Duration newQueryTimeout)
+  {
+    return new DDatabaseTransactionOptions(
+      this.isolationLevel,
+      this.durability,
+      this.mode,
+      this.timeout,
+      Optional.of(newQueryTimeout)
+    );
+  }
+}
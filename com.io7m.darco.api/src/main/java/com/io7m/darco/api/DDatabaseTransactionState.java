@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+/**
+ * The state of a transaction, as observed by the transaction itself.
+ */
+
+public enum DDatabaseTransactionState
+{
+  /**
+   * Nothing has been executed within the transaction since it was opened,
+   * or since it was last committed or rolled back.
+   */
+
+  CLEAN,
+
+  /**
+   * The underlying connection has been used since the transaction was
+   * opened, or since it was last committed or rolled back, and so the
+   * transaction may contain work that must be either committed or rolled
+   * back.
+   */
+
+  DIRTY,
+
+  /**
+   * The transaction has been committed.
+   */
+
+  COMMITTED,
+
+  /**
+   * The transaction has been rolled back.
+   */
+
+  ROLLED_BACK
+}
@@ -20,6 +20,7 @@ package com.io7m.darco.api;
 import io.opentelemetry.api.trace.Span;
 
 import java.sql.Connection;
+import java.sql.Savepoint;
 
 /**
  * A database transaction. If the transaction is closed, it is automatically
@@ -67,6 +68,15 @@ public interface DDatabaseTransactionType
     Class<Q> queryClass)
     throws DDatabaseException;
 
+  /**
+   * Cancel the transaction. Any statement that is currently executing is
+   * aborted, and subsequent queries fail with the error code
+   * {@code error-database-cancelled}. The transaction must still be closed
+   * (and is then rolled back). This method may be called from any thread.
+   */
+
+  void cancel();
+
   /**
    * Roll back the transaction.
    *
@@ -85,6 +95,88 @@ public interface DDatabaseTransactionType
   void commit()
     throws DDatabaseException;
 
+  /**
+   * Create a new savepoint within the transaction.
+   *
+   * @return The savepoint
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  Savepoint savepoint()
+    throws DDatabaseException;
+
+  /**
+   * Roll back all work performed since the given savepoint was created.
+   * Work performed before the savepoint was created is unaffected, and the
+   * transaction remains open.
+   *
+   * @param savepoint The savepoint
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  void rollbackTo(
+    Savepoint savepoint)
+    throws DDatabaseException;
+
+  /**
+   * Release the given savepoint. The work performed since the savepoint was
+   * created becomes part of the enclosing transaction.
+   *
+   * @param savepoint The savepoint
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  void release(
+    Savepoint savepoint)
+    throws DDatabaseException;
+
+  /**
+   * Execute the given work as a nested transaction. A savepoint is created
+   * before the work is executed. If the work completes normally, the
+   * savepoint is released. If the work raises an exception, the transaction
+   * is rolled back to the savepoint and the exception is rethrown; any work
+   * performed before the savepoint was created is preserved. This allows,
+   * for example, long-running batch transactions to skip individual failing
+   * records without restarting the entire transaction.
+   *
+   * @param scope The work
+   * @param <R>   The type of results
+   *
+   * @return The result of the work
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  <R> R withSavepoint(
+    DDatabaseSavepointScopeType<R> scope)
+    throws DDatabaseException;
+
+  /**
+   * Retrieve the current state of the transaction. The transaction is
+   * considered to be {@link DDatabaseTransactionState#DIRTY} as soon as the
+   * underlying connection has been requested via {@link #connection()}, and
+   * commits and rollbacks are not sent to the database for transactions that
+   * are not dirty.
+   *
+   * @return The current state of the transaction
+   */
+
+  DDatabaseTransactionState state();
+
+  /**
+   * Retrieve the number of database round trips made on behalf of this
+   * transaction. This counts executed queries, and the commit and rollback
+   * operations that were actually sent to the database. Statements executed
+   * directly on the underlying connection are not counted.
+   *
+   * @return The number of round trips made so far
+   */
+
+  long roundTrips();
+
   /**
    * Create a new span as a subset of the current transaction span. This can
    * be used to measure the times for individual queries within a transaction.
@@ -17,6 +17,8 @@
 
 package com.io7m.darco.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A database.
  *
@@ -39,6 +41,24 @@ public interface DDatabaseType<
 
   C configuration();
 
+  /**
+   * @return A future that completes when the database is ready for use, or
+   * fails if setup fails
+   *
+   * @see DDatabaseFactoryType#openAsynchronously(DDatabaseConfigurationType, java.util.function.Consumer)
+   */
+
+  default CompletableFuture<Void> readiness()
+  {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * @return The registry of connections currently open on the database
+   */
+
+  DDatabaseRegistry registry();
+
   @Override
   void close()
     throws DDatabaseException;
@@ -97,4 +117,83 @@ public interface DDatabaseType<
     String role)
     throws DDatabaseException;
 
+  /**
+   * Open a database connection using the default role, and create a new
+   * transaction with the given options. When the transaction is closed, the
+   * connection is also closed.
+   *
+   * @param options The transaction options
+   *
+   * @return A database transaction
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  T openTransaction(
+    DDatabaseTransactionOptions options)
+    throws DDatabaseException;
+
+  /**
+   * Open a database connection using the given role, and create a new
+   * transaction with the given options. When the transaction is closed, the
+   * connection is also closed.
+   *
+   * @param role    The role
+   * @param options The transaction options
+   *
+   * @return A database transaction
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  T openTransactionWithRole(
+    String role,
+    DDatabaseTransactionOptions options)
+    throws DDatabaseException;
+
+  /**
+   * Execute a single query using the default role. The query is executed
+   * on a connection in auto-commit mode, and so no explicit transaction is
+   * started, committed, or rolled back. This is intended for single-statement
+   * reads, and avoids the extra round trips required to set up and tear down
+   * a transaction. Queries executed this way are traced and report errors
+   * in the same way as queries executed in ordinary transactions.
+   *
+   * @param queryClass The query type
+   * @param parameters The query parameters
+   * @param <P>        The query parameter type
+   * @param <R>        The query return type
+   * @param <S>        The query type
+   *
+   * @return The query results
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  <P, R, S extends DDatabaseQueryType<P, R>> R queryOnce(
+    Class<S> queryClass,
+    P parameters)
+    throws DDatabaseException;
+
+  /**
+   * Execute a single query using the given role.
+   *
+   * @param role       The role
+   * @param queryClass The query type
+   * @param parameters The query parameters
+   * @param <P>        The query parameter type
+   * @param <R>        The query return type
+   * @param <S>        The query type
+   *
+   * @return The query results
+   *
+   * @throws DDatabaseException On errors
+   * @see #queryOnce(Class, Object)
+   */
+
+  <P, R, S extends DDatabaseQueryType<P, R>> R queryOnceWithRole(
+    String role,
+    Class<S> queryClass,
+    P parameters)
+    throws DDatabaseException;
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The time taken to execute a single statement during a schema upgrade.
+ *
+ * @param version   The schema version being upgraded to
+ * @param statement The statement text
+ * @param duration  The time taken
+ */
+
+public record DDatabaseUpgradeStatementTiming(
+  BigInteger version,
+  String statement,
+  Duration duration)
+{
+  private static final int SUMMARY_LENGTH = 72;
+
+  /**
+   * The time taken to execute a single statement during a schema upgrade.
+   *
+   * @param version   The schema version being upgraded to
+   * @param statement The statement text
+   * @param duration  The time taken
+   */
+
+  public DDatabaseUpgradeStatementTiming
+  {
+    Objects.requireNonNull(version, "version");
+    Objects.requireNonNull(statement, "statement");
+    Objects.requireNonNull(duration, "duration");
+  }
+
+  /**
+   * @return The statement text on a single line, abbreviated if necessary
+   */
+
+  public String statementSummary()
+  {
+    final var text = this.statement.strip().replaceAll("\\s+", " ");
+    if (text.length() <= SUMMARY_LENGTH) {
+      return text;
+    }
+    return text.substring(0, SUMMARY_LENGTH - 3) + "...";
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A timer for the statements executed during schema creation and upgrades.
+ * Factories report the events produced by the schema executor to the
+ * timer; each statement is then traced as a child span of the current
+ * span, and its duration is recorded in a histogram labelled by schema
+ * version. A statement is considered to run from the point it is reported
+ * until {@link #executed()} is called. Factories call {@link #executed()}
+ * as soon as a statement has finished executing, where they can observe
+ * that, and otherwise before any other work such as reading or writing the
+ * schema version, so that the other work is not attributed to the
+ * statement. A statement that has not been ended explicitly ends when the
+ * next statement or upgrade is reported, or the timer is closed. Timers
+ * are not thread-safe.
+ */
+
+public final class DDatabaseUpgradeTimer implements AutoCloseable
+{
+  private static final AttributeKey<String> VERSION =
+    AttributeKey.stringKey("version");
+  private static final AttributeKey<String> DB_STATEMENT =
+    AttributeKey.stringKey("db.statement");
+
+  private final Tracer tracer;
+  private final DoubleHistogram histogram;
+  private final ArrayList<DDatabaseUpgradeStatementTiming> timings;
+  private BigInteger version;
+  private Span span;
+  private String statement;
+  private long timeStart;
+
+  /**
+   * Create a timer.
+   *
+   * @param telemetry The telemetry
+   */
+
+  public DDatabaseUpgradeTimer(
+    final DDatabaseTelemetryType telemetry)
+  {
+    Objects.requireNonNull(telemetry, "telemetry");
+
+    this.tracer =
+      telemetry.tracer();
+    this.histogram =
+      DDatabaseMetrics.get(telemetry).schemaStatementDuration();
+    this.timings =
+      new ArrayList<>();
+    this.version =
+      BigInteger.ZERO;
+  }
+
+  /**
+   * Indicate that an upgrade to the given version has started.
+   *
+   * @param toVersion The version
+   */
+
+  public void upgrading(
+    final BigInteger toVersion)
+  {
+    Objects.requireNonNull(toVersion, "toVersion");
+
+    this.finishStatement();
+    this.version = toVersion;
+  }
+
+  /**
+   * Indicate that the given statement has started executing.
+   *
+   * @param text The statement text
+   */
+
+  public void executing(
+    final String text)
+  {
+    Objects.requireNonNull(text, "text");
+
+    this.finishStatement();
+    this.statement = text;
+    this.span =
+      this.tracer.spanBuilder("DatabaseUpgradeStatement")
+        .setAttribute(DB_STATEMENT, text)
+        .setAttribute(VERSION, this.version.toString())
+        .startSpan();
+    this.timeStart = System.nanoTime();
+  }
+
+  /**
+   * Indicate that the current statement, if any, has finished executing.
+   */
+
+  public void executed()
+  {
+    this.finishStatement();
+  }
+
+  private void finishStatement()
+  {
+    if (this.span == null) {
+      return;
+    }
+
+    final var duration = Duration.ofNanos(System.nanoTime() - this.timeStart);
+    this.span.end();
+    this.span = null;
+
+    this.histogram.record(
+      (double) duration.toNanos() / 1_000_000_000.0,
+      Attributes.of(VERSION, this.version.toString())
+    );
+    this.timings.add(
+      new DDatabaseUpgradeStatementTiming(
+        this.version,
+        this.statement,
+        duration
+      )
+    );
+  }
+
+  /**
+   * @param count The maximum number of statements
+   *
+   * @return The slowest statements executed so far, slowest first
+   */
+
+  public List<DDatabaseUpgradeStatementTiming> slowest(
+    final int count)
+  {
+    return this.timings.stream()
+      .sorted(
+        Comparator.comparing(DDatabaseUpgradeStatementTiming::duration)
+          .reversed()
+      )
+      .limit(count)
+      .toList();
+  }
+
+  @Override
+  public void close()
+  {
+    this.finishStatement();
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.api;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The configuration of the connection watchdog. The watchdog periodically
+ * inspects the connections that are open on a database. Connections that
+ * have been held for longer than the warning threshold are logged (once
+ * each), and transactions that have been open for longer than the cancel
+ * threshold are cancelled and have their connections aborted, so that any
+ * locks they hold are released even if they are idle.
+ *
+ * @param interval           The interval at which connections are inspected
+ * @param warnThreshold      The hold time after which a connection is logged
+ * @param cancelThreshold    The time after which an open transaction is
+ *                           cancelled and its connection aborted, if any
+ * @param stackTraceSampling The stack trace of the code that opened a
+ *                           connection is recorded for one in every
+ *                           {@code stackTraceSampling} connections; zero
+ *                           disables stack traces, and one records them for
+ *                           every connection
+ *
+ * @see DDatabaseConfigurationType#watchdog()
+ * @see DDatabaseTransactionType#cancel()
+ */
+
+public record DDatabaseWatchdogConfiguration(
+  Duration interval,
+  Duration warnThreshold,
+  Optional<Duration> cancelThreshold,
+  int stackTraceSampling)
+{
+  /**
+   * The configuration of the connection watchdog.
+   *
+   * @param interval           The interval at which connections are inspected
+   * @param warnThreshold      The hold time after which a connection is logged
+   * @param cancelThreshold    The time after which an open transaction is
+   *                           cancelled and its connection aborted, if any
+   * @param stackTraceSampling The stack trace of the code that opened a
+   *                           connection is recorded for one in every
+   *                           {@code stackTraceSampling} connections; zero
+   *                           disables stack traces, and one records them for
+   *                           every connection
+   */
+
+  public DDatabaseWatchdogConfiguration
+  {
+    Objects.requireNonNull(interval, "interval");
+    Objects.requireNonNull(warnThreshold, "warnThreshold");
+    Objects.requireNonNull(cancelThreshold, "cancelThreshold");
+
+    if (stackTraceSampling < 0) {
+      throw new IllegalArgumentException(
+        "Stack trace sampling %d must be non-negative"
+          .formatted(Integer.valueOf(stackTraceSampling))
+      );
+    }
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException(
+        "Interval %s must be positive".formatted(interval)
+      );
+    }
+  }
+}
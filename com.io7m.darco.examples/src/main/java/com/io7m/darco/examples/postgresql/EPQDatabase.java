@@ -19,6 +19,7 @@ package com.io7m.darco.examples.postgresql;
 
 import com.io7m.darco.api.DDatabaseAbstract;
 import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseReadiness;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import io.opentelemetry.api.trace.Span;
 
@@ -38,10 +39,17 @@ final class EPQDatabase
   EPQDatabase(
     final EPQDatabaseConfiguration inConfiguration,
     final DataSource inDataSource,
+    final DDatabaseReadiness inReadiness,
     final Collection<EPQDatabaseQueryProviderType<?, ?, ?>> queryProviders,
     final CloseableCollectionType<DDatabaseException> resources)
   {
-    super(inConfiguration, inDataSource, queryProviders, resources);
+    super(
+      inConfiguration,
+      inDataSource,
+      inReadiness,
+      queryProviders,
+      resources
+    );
   }
 
   @Override
@@ -18,6 +18,7 @@
 package com.io7m.darco.examples.postgresql;
 
 import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseReadiness;
 import com.io7m.darco.postgres.DPQDatabaseFactory;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.lanark.core.RDottedName;
@@ -72,12 +73,14 @@ public final class EPQDatabaseFactory
   protected EPQDatabaseType onCreateDatabase(
     final EPQDatabaseConfiguration configuration,
     final DataSource source,
+    final DDatabaseReadiness readiness,
     final List<EPQDatabaseQueryProviderType<?, ?, ?>> queryProviders,
     final CloseableCollectionType<DDatabaseException> resources)
   {
     return new EPQDatabase(
       configuration,
       source,
+      readiness,
       queryProviders,
       resources
     );
@@ -17,14 +17,14 @@
 
 package com.io7m.darco.examples.postgresql;
 
-import com.io7m.darco.api.DDatabaseTransactionAbstract;
 import com.io7m.darco.api.DDatabaseTransactionCloseBehavior;
+import com.io7m.darco.postgres.DPQDatabaseTransactionAbstract;
 import io.opentelemetry.api.trace.Span;
 
 import java.util.Map;
 
 final class EPQDatabaseTransaction
-  extends DDatabaseTransactionAbstract<
+  extends DPQDatabaseTransactionAbstract<
   EPQDatabaseConfiguration,
   EPQDatabaseConnectionType,
   EPQDatabaseTransactionType,
@@ -59,7 +59,7 @@ public final class EPQWordPut
 
     try (var s = c.prepareStatement("INSERT INTO words VALUES (?)")) {
       s.setString(1, text);
-      s.executeUpdate();
+      this.recordRowCount(s.executeUpdate());
     }
 
     return DDatabaseUnit.UNIT;
@@ -19,6 +19,7 @@ package com.io7m.darco.examples.sqlite;
 
 import com.io7m.darco.api.DDatabaseAbstract;
 import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseReadiness;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import io.opentelemetry.api.trace.Span;
 import org.sqlite.SQLiteDataSource;
@@ -39,10 +40,17 @@ final class ESDatabase
   ESDatabase(
     final ESDatabaseConfiguration inConfiguration,
     final SQLiteDataSource inDataSource,
+    final DDatabaseReadiness inReadiness,
     final Collection<ESDatabaseQueryProviderType<?, ?, ?>> queryProviders,
     final CloseableCollectionType<DDatabaseException> resources)
   {
-    super(inConfiguration, inDataSource, queryProviders, resources);
+    super(
+      inConfiguration,
+      inDataSource,
+      inReadiness,
+      queryProviders,
+      resources
+    );
   }
 
   private static void setWALMode(
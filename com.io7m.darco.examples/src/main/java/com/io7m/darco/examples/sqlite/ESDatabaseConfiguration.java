@@ -20,12 +20,20 @@ package com.io7m.darco.examples.sqlite;
 import com.io7m.darco.api.DDatabaseCreate;
 import com.io7m.darco.api.DDatabaseTelemetryType;
 import com.io7m.darco.api.DDatabaseUpgrade;
+import com.io7m.darco.api.DDatabaseWatchdogConfiguration;
 import com.io7m.darco.api.DRoles;
 import com.io7m.darco.api.DUsernamePassword;
+import com.io7m.darco.sqlite.DSDatabaseAccessMode;
 import com.io7m.darco.sqlite.DSDatabaseConfigurationType;
+import com.io7m.darco.sqlite.DSDatabaseIncrementalVacuum;
+import com.io7m.darco.sqlite.DSDatabaseLocationFile;
+import com.io7m.darco.sqlite.DSDatabaseLocationMemory;
+import com.io7m.darco.sqlite.DSDatabaseLocationType;
+import com.io7m.darco.sqlite.DSDatabaseProfile;
 import com.io7m.jxe.core.JXEHardenedSAXParsers;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -33,11 +41,18 @@ import java.util.Optional;
 /**
  * The configuration information for the example SQLite database.
  *
- * @param saxParsers The SAX parsers
- * @param telemetry  The telemetry interface
- * @param create     The database creation option
- * @param upgrade    The database upgrade option
- * @param file       The database file
+ * @param saxParsers          The SAX parsers
+ * @param telemetry           The telemetry interface
+ * @param create              The database creation option
+ * @param upgrade             The database upgrade option
+ * @param location            The database location
+ * @param accessMode          The access mode
+ * @param profile             The tuning profile
+ * @param checkpointInterval  The interval between background WAL checkpoints
+ * @param optimizeInterval    The interval between runs of PRAGMA optimize
+ * @param analyzeAfterUpgrade Whether to run ANALYZE after schema upgrades
+ * @param incrementalVacuum   The incremental vacuum configuration
+ * @param watchdog            The connection watchdog configuration
  */
 
 public record ESDatabaseConfiguration(
@@ -45,17 +60,31 @@ public record ESDatabaseConfiguration(
   DDatabaseTelemetryType telemetry,
   DDatabaseCreate create,
   DDatabaseUpgrade upgrade,
-  Path file)
+  DSDatabaseLocationType location,
+  DSDatabaseAccessMode accessMode,
+  DSDatabaseProfile profile,
+  Optional<Duration> checkpointInterval,
+  Optional<Duration> optimizeInterval,
+  boolean analyzeAfterUpgrade,
+  Optional<DSDatabaseIncrementalVacuum> incrementalVacuum,
+  Optional<DDatabaseWatchdogConfiguration> watchdog)
   implements DSDatabaseConfigurationType
 {
   /**
    * The configuration information for the example SQLite database.
    *
-   * @param saxParsers The SAX parsers
-   * @param telemetry  The telemetry interface
-   * @param create     The database creation option
-   * @param upgrade    The database upgrade option
-   * @param file       The database file
+   * @param saxParsers          The SAX parsers
+   * @param telemetry           The telemetry interface
+   * @param create              The database creation option
+   * @param upgrade             The database upgrade option
+   * @param location            The database location
+   * @param accessMode          The access mode
+   * @param profile             The tuning profile
+   * @param checkpointInterval  The interval between background WAL checkpoints
+   * @param optimizeInterval    The interval between runs of PRAGMA optimize
+   * @param analyzeAfterUpgrade Whether to run ANALYZE after schema upgrades
+   * @param incrementalVacuum   The incremental vacuum configuration
+   * @param watchdog            The connection watchdog configuration
    */
 
   public ESDatabaseConfiguration
@@ -64,7 +93,61 @@ public record ESDatabaseConfiguration(
     Objects.requireNonNull(telemetry, "telemetry");
     Objects.requireNonNull(create, "create");
     Objects.requireNonNull(upgrade, "upgrade");
-    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(location, "location");
+    Objects.requireNonNull(accessMode, "accessMode");
+    Objects.requireNonNull(profile, "profile");
+    Objects.requireNonNull(checkpointInterval, "checkpointInterval");
+    Objects.requireNonNull(optimizeInterval, "optimizeInterval");
+    Objects.requireNonNull(incrementalVacuum, "incrementalVacuum");
+    Objects.requireNonNull(watchdog, "watchdog");
+  }
+
+  /**
+   * The configuration information for the example SQLite database, opened
+   * read-write using the durable profile, SQLite's automatic checkpoints,
+   * no scheduled optimization or vacuuming, and no connection watchdog.
+   *
+   * @param saxParsers          The SAX parsers
+   * @param telemetry           The telemetry interface
+   * @param create              The database creation option
+   * @param upgrade             The database upgrade option
+   * @param file                The database file
+   */
+
+  public ESDatabaseConfiguration(
+    final Optional<JXEHardenedSAXParsers> saxParsers,
+    final DDatabaseTelemetryType telemetry,
+    final DDatabaseCreate create,
+    final DDatabaseUpgrade upgrade,
+    final Path file)
+  {
+    this(
+      saxParsers,
+      telemetry,
+      create,
+      upgrade,
+      new DSDatabaseLocationFile(file),
+      DSDatabaseAccessMode.READ_WRITE,
+      DSDatabaseProfile.durable(),
+      Optional.empty(),
+      Optional.empty(),
+      false,
+      Optional.empty(),
+      Optional.empty()
+    );
+  }
+
+  @Override
+  public Path file()
+  {
+    return switch (this.location) {
+      case final DSDatabaseLocationFile f -> f.file();
+      case final DSDatabaseLocationMemory m -> {
+        throw new IllegalStateException(
+          "Database %s is held in memory".formatted(m.name())
+        );
+      }
+    };
   }
 
   @Override
@@ -18,6 +18,7 @@
 package com.io7m.darco.examples.sqlite;
 
 import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseReadiness;
 import com.io7m.darco.sqlite.DSDatabaseFactory;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.lanark.core.RDottedName;
@@ -72,12 +73,14 @@ public final class ESDatabaseFactory
   protected ESDatabaseType onCreateDatabase(
     final ESDatabaseConfiguration configuration,
     final SQLiteDataSource source,
+    final DDatabaseReadiness readiness,
     final List<ESDatabaseQueryProviderType<?, ?, ?>> queryProviders,
     final CloseableCollectionType<DDatabaseException> resources)
   {
     return new ESDatabase(
       configuration,
       source,
+      readiness,
       queryProviders,
       resources
     );
@@ -17,14 +17,14 @@
 
 package com.io7m.darco.examples.sqlite;
 
-import com.io7m.darco.api.DDatabaseTransactionAbstract;
 import com.io7m.darco.api.DDatabaseTransactionCloseBehavior;
+import com.io7m.darco.sqlite.DSDatabaseTransactionAbstract;
 import io.opentelemetry.api.trace.Span;
 
 import java.util.Map;
 
 final class ESDatabaseTransaction
-  extends DDatabaseTransactionAbstract<
+  extends DSDatabaseTransactionAbstract<
   ESDatabaseConfiguration,
   ESDatabaseConnectionType,
   ESDatabaseTransactionType,
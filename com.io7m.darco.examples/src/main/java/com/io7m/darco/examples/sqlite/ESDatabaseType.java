@@ -17,14 +17,14 @@
 
 package com.io7m.darco.examples.sqlite;
 
-import com.io7m.darco.api.DDatabaseType;
+import com.io7m.darco.sqlite.DSDatabaseType;
 
 /**
  * The type of example SQLite databases.
  */
 
 public interface ESDatabaseType
-  extends DDatabaseType<
+  extends DSDatabaseType<
   ESDatabaseConfiguration,
   ESDatabaseConnectionType,
   ESDatabaseTransactionType,
@@ -58,7 +58,7 @@ public final class ESWordPut
 
     try (var s = c.prepareStatement("INSERT INTO words VALUES (?)")) {
       s.setString(1, text);
-      s.executeUpdate();
+      this.recordRowCount(s.executeUpdate());
     }
 
     return DDatabaseUnit.UNIT;
@@ -18,7 +18,11 @@
 package com.io7m.darco.postgres;
 
 import com.io7m.darco.api.DDatabaseConfigurationType;
+import com.io7m.darco.api.DDatabaseKinds;
 import com.io7m.darco.api.DUsernamePassword;
+import com.io7m.lanark.core.RDottedName;
+
+import java.time.Duration;
 
 /**
  * The type of database configurations specific to PostgreSQL implementations.
@@ -27,6 +31,12 @@ import com.io7m.darco.api.DUsernamePassword;
 public interface DPQDatabaseConfigurationType
   extends DDatabaseConfigurationType
 {
+  @Override
+  default RDottedName kind()
+  {
+    return DDatabaseKinds.postgreSQL();
+  }
+
   /**
    * @return The database address
    */
@@ -51,6 +61,20 @@ public interface DPQDatabaseConfigurationType
 
   boolean databaseUseTLS();
 
+  /**
+   * The name of a database that always exists on the server, used when
+   * creating databases from templates.
+   *
+   * @return The maintenance database name
+   *
+   * @see DPQDatabaseFactory#openFromTemplate(DPQDatabaseConfigurationType, java.util.function.Consumer)
+   */
+
+  default String maintenanceDatabaseName()
+  {
+    return "postgres";
+  }
+
   /**
    * @return The database owner role
    */
@@ -68,4 +92,46 @@ public interface DPQDatabaseConfigurationType
    */
 
   DUsernamePassword workerRole();
+
+  /**
+   * The maximum length of time to wait for another process to finish
+   * upgrading the database schema. Processes that open the database hold
+   * an advisory lock while creating or upgrading the schema, so that only
+   * one process upgrades at a time. A zero duration waits indefinitely.
+   *
+   * @return The upgrade lock timeout
+   */
+
+  default Duration upgradeLockTimeout()
+  {
+    return Duration.ofMinutes(5L);
+  }
+
+  /**
+   * The interval at which progress is reported for schema statements that
+   * run outside of the upgrade transaction.
+   *
+   * @return The upgrade progress interval
+   *
+   * @see DPQDatabaseFactory#NON_TRANSACTIONAL
+   */
+
+  default Duration upgradeProgressInterval()
+  {
+    return Duration.ofSeconds(10L);
+  }
+
+  /**
+   * The maximum number of tenant schemas that will be upgraded at the same
+   * time when opening a schema-per-tenant database.
+   *
+   * @return The tenant upgrade parallelism
+   *
+   * @see DPQDatabaseFactory#openTenants(DPQDatabaseConfigurationType, java.util.Collection, java.util.function.Consumer)
+   */
+
+  default int tenantUpgradeParallelism()
+  {
+    return 4;
+  }
 }
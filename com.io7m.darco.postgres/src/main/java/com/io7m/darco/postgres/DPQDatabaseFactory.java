@@ -22,8 +22,11 @@ import com.io7m.darco.api.DDatabaseException;
 import com.io7m.darco.api.DDatabaseFactoryType;
 import com.io7m.darco.api.DDatabaseKinds;
 import com.io7m.darco.api.DDatabaseQueryProviderType;
+import com.io7m.darco.api.DDatabaseReadiness;
+import com.io7m.darco.api.DDatabaseSchemaSummary;
 import com.io7m.darco.api.DDatabaseTransactionType;
 import com.io7m.darco.api.DDatabaseType;
+import com.io7m.darco.api.DDatabaseUpgradeTimer;
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.jxe.core.JXEHardenedSAXParsers;
@@ -33,23 +36,41 @@ import com.io7m.trasco.api.TrEventExecutingSQL;
 import com.io7m.trasco.api.TrEventType;
 import com.io7m.trasco.api.TrEventUpgrading;
 import com.io7m.trasco.api.TrExecutorConfiguration;
+import com.io7m.trasco.api.TrExecutorUpgrade;
 import com.io7m.trasco.api.TrSchemaRevisionSet;
 import com.io7m.trasco.vanilla.TrExecutors;
 import com.io7m.trasco.vanilla.TrSchemaRevisionSetParsers;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
 import org.postgresql.ds.PGSimpleDataSource;
 import org.postgresql.util.PSQLState;
 import org.slf4j.Logger;
 
 import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Consumer;
 
 import static com.io7m.trasco.api.TrExecutorUpgrade.FAIL_INSTEAD_OF_UPGRADING;
@@ -74,9 +95,48 @@ public abstract class DPQDatabaseFactory<
   D extends DDatabaseType<C, N, T, Q>>
   implements DDatabaseFactoryType<C, N, T, Q, D>
 {
+  private static final long UPGRADE_LOCK_PAUSE_INITIAL = 10L;
+  private static final long UPGRADE_LOCK_PAUSE_MAXIMUM = 500L;
+  private static final String SQLSTATE_DUPLICATE_DATABASE = "42P04";
+  private static final String SQLSTATE_OBJECT_IN_USE = "55006";
+  private static final int TEMPLATE_CLONE_ATTEMPTS = 10;
+
+  /**
+   * A marker that, when placed at the start of a schema statement, causes
+   * the statement to be executed outside of the upgrade transaction. This
+   * is required for statements such as {@code CREATE INDEX CONCURRENTLY}
+   * that PostgreSQL refuses to execute inside a transaction block. Marked
+   * statements must be placed in revisions of their own. The work performed
+   * by earlier revisions is committed before such a revision is applied, and
+   * the schema version is only advanced once all of the revision's
+   * statements have succeeded; a revision that fails part way through is
+   * therefore attempted again in full by the next upgrade, and its
+   * statements should be written so that they can safely be run again (for
+   * example, by dropping any invalid index left behind by a failed
+   * concurrent build).
+   */
+
+  public static final String NON_TRANSACTIONAL =
+    "-- darco:non-transactional";
+
+  private static final int SLOWEST_STATEMENTS = 5;
+
+  /*
+   * A single factory is shared by all databases so that each setup thread
+   * receives a distinct name.
+   */
+
+  private static final ThreadFactory SETUP_THREADS =
+    Thread.ofPlatform()
+      .name("com.io7m.darco.postgres.setup-", 0L)
+      .daemon(true)
+      .factory();
+
+  private final ConcurrentHashMap<String, BigInteger> latestVersions;
+
   protected DPQDatabaseFactory()
   {
-
+    this.latestVersions = new ConcurrentHashMap<>();
   }
 
   /**
@@ -97,6 +157,7 @@ public abstract class DPQDatabaseFactory<
    *
    * @param configuration  The database configuration
    * @param source         The datasource
+   * @param readiness      The readiness gate of the database
    * @param queryProviders The query providers
    * @param resources      The resources that should be closed with the database
    *
@@ -106,6 +167,7 @@ public abstract class DPQDatabaseFactory<
   protected abstract D onCreateDatabase(
     C configuration,
     DataSource source,
+    DDatabaseReadiness readiness,
     List<Q> queryProviders,
     CloseableCollectionType<DDatabaseException> resources);
 
@@ -127,6 +189,25 @@ public abstract class DPQDatabaseFactory<
 
   protected abstract InputStream onRequireDatabaseSchemaXML();
 
+  /**
+   * Retrieve a precomputed summary of the schema returned by
+   * {@link #onRequireDatabaseSchemaXML()}. If the checksum of the summary
+   * matches the schema, the schema is not parsed when opening a database
+   * that is already at the latest version. A summary with a checksum that
+   * does not match the schema is ignored. Regardless of whether a summary
+   * is provided, a factory remembers the latest version of each schema it
+   * has parsed.
+   *
+   * @return The schema summary, if one is available
+   *
+   * @see DDatabaseSchemaSummary#checksumOf(byte[])
+   */
+
+  protected Optional<DDatabaseSchemaSummary> onRequireDatabaseSchemaSummary()
+  {
+    return Optional.empty();
+  }
+
   /**
    * Receive an event produced during database creation/upgrades.
    *
@@ -184,6 +265,24 @@ public abstract class DPQDatabaseFactory<
 
   protected abstract List<Q> onRequireDatabaseQueryProviders();
 
+  /**
+   * Determine the name of the template database that holds the given schema
+   * version. If several applications share a server, they should use
+   * distinct template names.
+   *
+   * @param version The schema version
+   *
+   * @return The template database name
+   *
+   * @see #openFromTemplate(DPQDatabaseConfigurationType, Consumer)
+   */
+
+  protected String onRequireTemplateDatabaseName(
+    final BigInteger version)
+  {
+    return "darco_template_" + version;
+  }
+
   private void schemaVersionSet(
     final BigInteger version,
     final Connection connection)
@@ -297,16 +396,442 @@ public abstract class DPQDatabaseFactory<
     Objects.requireNonNull(configuration, "configuration");
     Objects.requireNonNull(startupMessages, "startupMessages");
 
-    this.createOrUpgrade(configuration, startupMessages);
-    return this.connect(configuration);
+    this.createOrUpgrade(
+      configuration,
+      configuration.databaseName(),
+      Optional.empty(),
+      startupMessages
+    );
+    return this.connect(configuration, DDatabaseReadiness.ready());
   }
 
-  private D connect(
-    final C configuration)
+  /**
+   * Open a database, first creating it as a copy of a template database if
+   * it does not already exist. The template database holds the latest schema
+   * version and is created and upgraded on first use, so schema revisions
+   * are executed once per schema version rather than once per database.
+   * Databases are created using the owner role from a connection to the
+   * {@link DPQDatabaseConfigurationType#maintenanceDatabaseName()}, and so
+   * the owner role must be permitted to create databases. Templates are
+   * only valid if the schema arguments do not vary between databases.
+   *
+   * @param configuration   The database configuration
+   * @param startupMessages A function that will receive startup messages
+   *
+   * @return A database
+   *
+   * @throws DDatabaseException On errors
+   *
+   * @see #onRequireTemplateDatabaseName(BigInteger)
+   */
+
+  public final D openFromTemplate(
+    final C configuration,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    final var span =
+      configuration.telemetry()
+        .tracer()
+        .spanBuilder("DatabaseClone")
+        .startSpan();
+
+    try (var ignored0 = span.makeCurrent()) {
+      this.cloneFromTemplate(configuration, startupMessages);
+    } catch (final DDatabaseException e) {
+      span.recordException(e);
+      throw e;
+    } finally {
+      span.end();
+    }
+
+    return this.open(configuration, startupMessages);
+  }
+
+  private void cloneFromTemplate(
+    final C configuration,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    final var url = new StringBuilder(128);
+    url.append("jdbc:postgresql://");
+    url.append(configuration.databaseAddress());
+    url.append(':');
+    url.append(configuration.databasePort());
+    url.append('/');
+
+    final var ownerRole =
+      configuration.ownerRole();
+
+    final var dataSource = new PGSimpleDataSource();
+    dataSource.setURL(url.toString());
+    dataSource.setUser(ownerRole.userName());
+    dataSource.setPassword(ownerRole.password());
+    dataSource.setDatabaseName(configuration.maintenanceDatabaseName());
+    dataSource.setSsl(configuration.databaseUseTLS());
+
+    try {
+      final var target =
+        configuration.databaseName();
+      final var template =
+        this.onRequireTemplateDatabaseName(this.schemaLatest(configuration));
+
+      try (var connection = dataSource.getConnection()) {
+        connection.setAutoCommit(true);
+
+        if (databaseIsTemplate(connection, target).isPresent()) {
+          return;
+        }
+
+        /*
+         * A template is only marked as such once it has been fully upgraded,
+         * so a database that exists but is not marked may have been left
+         * behind by a process that failed part way through; upgrading it
+         * again is harmless.
+         */
+
+        final var isTemplate = databaseIsTemplate(connection, template);
+        if (isTemplate.isEmpty()) {
+          this.publishEvent(
+            startupMessages,
+            String.format("Creating template database %s", template)
+          );
+          createDatabase(connection, template);
+        }
+
+        if (!isTemplate.orElse(Boolean.FALSE).booleanValue()) {
+          this.createOrUpgrade(
+            configuration,
+            template,
+            Optional.empty(),
+            startupMessages
+          );
+          try (var st = connection.createStatement()) {
+            st.execute(
+              "ALTER DATABASE %s IS_TEMPLATE true"
+                .formatted(quoteIdentifier(template))
+            );
+          }
+        }
+
+        this.publishEvent(
+          startupMessages,
+          String.format(
+            "Creating database %s from template %s",
+            target,
+            template
+          )
+        );
+        cloneDatabase(connection, template, target);
+      }
+    } catch (final Exception e) {
+      throw DDatabaseException.ofException(e);
+    }
+  }
+
+  private static Optional<Boolean> databaseIsTemplate(
+    final Connection connection,
+    final String name)
+    throws SQLException
+  {
+    try (var st = connection.prepareStatement(
+      "SELECT datistemplate FROM pg_database WHERE datname = ?")) {
+      st.setString(1, name);
+      try (var rs = st.executeQuery()) {
+        if (rs.next()) {
+          return Optional.of(Boolean.valueOf(rs.getBoolean(1)));
+        }
+        return Optional.empty();
+      }
+    }
+  }
+
+  private static void createDatabase(
+    final Connection connection,
+    final String name)
+    throws SQLException
+  {
+    try (var st = connection.createStatement()) {
+      st.execute("CREATE DATABASE " + quoteIdentifier(name));
+    } catch (final SQLException e) {
+      if (!Objects.equals(e.getSQLState(), SQLSTATE_DUPLICATE_DATABASE)) {
+        throw e;
+      }
+    }
+  }
+
+  /*
+   * PostgreSQL refuses to copy a template database whilst any other session
+   * is connected to it, which can briefly be the case whilst another process
+   * is checking the version of a newly created template.
+   */
+
+  private static void cloneDatabase(
+    final Connection connection,
+    final String template,
+    final String target)
+    throws SQLException, InterruptedException
+  {
+    final var statement =
+      "CREATE DATABASE %s TEMPLATE %s"
+        .formatted(quoteIdentifier(target), quoteIdentifier(template));
+
+    for (int attempt = 1; true; ++attempt) {
+      try (var st = connection.createStatement()) {
+        st.execute(statement);
+        return;
+      } catch (final SQLException e) {
+        final var state = e.getSQLState();
+        if (Objects.equals(state, SQLSTATE_DUPLICATE_DATABASE)) {
+          return;
+        }
+        if (Objects.equals(state, SQLSTATE_OBJECT_IN_USE)
+            && attempt < TEMPLATE_CLONE_ATTEMPTS) {
+          Thread.sleep(100L * attempt);
+          continue;
+        }
+        throw e;
+      }
+    }
+  }
+
+  static String quoteIdentifier(
+    final String name)
+  {
+    return '"' + name.replace("\"", "\"\"") + '"';
+  }
+
+  @Override
+  public final D openAsynchronously(
+    final C configuration,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
   {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    final var readiness = DDatabaseReadiness.create();
+    final var database = this.connect(configuration, readiness);
+
+    SETUP_THREADS.newThread(() -> {
+      try {
+        this.createOrUpgrade(
+          configuration,
+          configuration.databaseName(),
+          Optional.empty(),
+          startupMessages
+        );
+        readiness.complete();
+      } catch (final DDatabaseException e) {
+        this.logger().error("Database setup failed: ", e);
+        readiness.fail(e);
+      } catch (final RuntimeException e) {
+        this.logger().error("Database setup failed: ", e);
+        readiness.fail(DDatabaseException.ofException(e));
+      }
+    }).start();
+
+    return database;
+  }
+
+  /**
+   * Open a schema-per-tenant database. Each tenant's tables live in a
+   * PostgreSQL schema named after the tenant within the configured database,
+   * and all tenants share a single worker data source (as returned by
+   * {@link #onTransformDataSourceForUse(DataSource)}), so that the number of
+   * connections does not grow with the number of tenants. The schemas of
+   * the given tenants are created and upgraded before this method returns,
+   * with at most {@link DPQDatabaseConfigurationType#tenantUpgradeParallelism()}
+   * schemas upgraded at the same time. Each tenant is upgraded under its own
+   * upgrade lock. Startup messages may be delivered from multiple threads,
+   * and are prefixed with the name of the tenant to which they refer.
+   *
+   * @param configuration   The database configuration
+   * @param tenants         The tenants
+   * @param startupMessages A function that will receive startup messages
+   *
+   * @return The tenant databases
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  public final DPQDatabaseTenants<D> openTenants(
+    final C configuration,
+    final Collection<DPQTenant> tenants,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(tenants, "tenants");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    final var distinct = Set.copyOf(tenants);
+    this.upgradeTenants(configuration, distinct, startupMessages);
+
     final var resources =
       createCloseableResources();
+    final var dataSource =
+      this.workerDataSource(configuration);
+    final var installDataSource =
+      this.onTransformDataSourceForUse(dataSource);
+
+    if (installDataSource instanceof final AutoCloseable closeable) {
+      resources.add(closeable);
+    }
+
+    final var databases = new HashMap<DPQTenant, D>(distinct.size());
+    for (final var tenant : distinct) {
+      databases.put(
+        tenant,
+        resources.add(
+          this.tenantDatabase(configuration, installDataSource, tenant)
+        )
+      );
+    }
+
+    return new DPQDatabaseTenants<>(
+      (tenant, messages) -> {
+        this.createOrUpgrade(
+          configuration,
+          configuration.databaseName(),
+          Optional.of(tenant),
+          tenantMessages(tenant, messages)
+        );
+        return this.tenantDatabase(configuration, installDataSource, tenant);
+      },
+      resources,
+      databases
+    );
+  }
 
+  private D tenantDatabase(
+    final C configuration,
+    final DataSource shared,
+    final DPQTenant tenant)
+  {
+    return this.onCreateDatabase(
+      configuration,
+      new DPQTenantDataSource(
+        this.logger(),
+        shared,
+        configuration.workerRole().userName(),
+        tenant
+      ),
+      DDatabaseReadiness.ready(),
+      this.onRequireDatabaseQueryProviders(),
+      createCloseableResources()
+    );
+  }
+
+  private static Consumer<String> tenantMessages(
+    final DPQTenant tenant,
+    final Consumer<String> startupMessages)
+  {
+    return message -> {
+      startupMessages.accept("[%s] %s".formatted(tenant.schema(), message));
+    };
+  }
+
+  /*
+   * Tenant schemas are upgraded on a bounded pool of threads. All tenants
+   * are attempted even if some fail, and the first failure is raised with
+   * the others attached as suppressed exceptions.
+   */
+
+  private void upgradeTenants(
+    final C configuration,
+    final Set<DPQTenant> tenants,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    final var span =
+      configuration.telemetry()
+        .tracer()
+        .spanBuilder("DatabaseTenantsSetup")
+        .setAttribute("tenants", (long) tenants.size())
+        .startSpan();
+
+    final var parallelism =
+      Math.max(1, configuration.tenantUpgradeParallelism());
+
+    final var threadFactory =
+      Thread.ofPlatform()
+        .name("com.io7m.darco.postgres.tenant-upgrade-", 0L)
+        .daemon(true)
+        .factory();
+
+    try (var ignored0 = span.makeCurrent();
+         var executor =
+           Executors.newFixedThreadPool(parallelism, threadFactory)) {
+
+      final var futures = new HashMap<DPQTenant, Future<?>>(tenants.size());
+      for (final var tenant : tenants) {
+        futures.put(
+          tenant,
+          executor.submit(Context.current().wrap(() -> {
+            this.createOrUpgrade(
+              configuration,
+              configuration.databaseName(),
+              Optional.of(tenant),
+              tenantMessages(tenant, startupMessages)
+            );
+            return null;
+          }))
+        );
+      }
+
+      DDatabaseException failure = null;
+      for (final var entry : futures.entrySet()) {
+        try {
+          entry.getValue().get();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw DDatabaseException.ofException(e);
+        } catch (final ExecutionException e) {
+          final var error =
+            tenantUpgradeFailed(entry.getKey(), e.getCause());
+          if (failure == null) {
+            failure = error;
+          } else {
+            failure.addSuppressed(error);
+          }
+        }
+      }
+
+      if (failure != null) {
+        span.recordException(failure);
+        throw failure;
+      }
+    } finally {
+      span.end();
+    }
+  }
+
+  private static DDatabaseException tenantUpgradeFailed(
+    final DPQTenant tenant,
+    final Throwable cause)
+  {
+    final var base =
+      DDatabaseException.ofException(cause);
+    final var attributes =
+      new HashMap<>(base.attributes());
+    attributes.put("Tenant", tenant.schema());
+
+    return new DDatabaseException(
+      "Failed to upgrade the schema of a tenant.",
+      base,
+      base.errorCode(),
+      attributes,
+      base.remediatingAction()
+    );
+  }
+
+  private PGSimpleDataSource workerDataSource(
+    final C configuration)
+  {
     final var url = new StringBuilder(128);
     url.append("jdbc:postgresql://");
     url.append(configuration.databaseAddress());
@@ -323,6 +848,17 @@ public abstract class DPQDatabaseFactory<
     dataSource.setPassword(workerRole.password());
     dataSource.setDatabaseName(configuration.databaseName());
     dataSource.setSsl(configuration.databaseUseTLS());
+    return dataSource;
+  }
+
+  private D connect(
+    final C configuration,
+    final DDatabaseReadiness readiness)
+  {
+    final var resources =
+      createCloseableResources();
+    final var dataSource =
+      this.workerDataSource(configuration);
 
     final var installDataSource =
       this.onTransformDataSourceForUse(dataSource);
@@ -331,16 +867,36 @@ public abstract class DPQDatabaseFactory<
       resources.add(closeable);
     }
 
+    /*
+     * Closing the database waits for any setup still running in the
+     * background to finish.
+     */
+
+    resources.add(awaitOnClose(readiness));
+
     return this.onCreateDatabase(
       configuration,
       dataSource,
+      readiness,
       this.onRequireDatabaseQueryProviders(),
       resources
     );
   }
 
+  private static AutoCloseable awaitOnClose(
+    final DDatabaseReadiness readiness)
+  {
+    return () -> {
+      readiness.future()
+        .exceptionally(x -> null)
+        .join();
+    };
+  }
+
   private void createOrUpgrade(
     final C configuration,
+    final String databaseName,
+    final Optional<DPQTenant> tenant,
     final Consumer<String> startupMessages)
     throws DDatabaseException
   {
@@ -353,6 +909,11 @@ public abstract class DPQDatabaseFactory<
         .spanBuilder("DatabaseSetup")
         .startSpan();
 
+    tenant.ifPresent(t -> span.setAttribute("tenant", t.schema()));
+
+    final var lockKey =
+      upgradeLockKey(this.applicationId(), tenant);
+
     final var schemaArguments =
       this.onRequireDatabaseSchemaArguments(configuration);
 
@@ -372,7 +933,7 @@ public abstract class DPQDatabaseFactory<
         dataSource.setURL(url.toString());
         dataSource.setUser(ownerRole.userName());
         dataSource.setPassword(ownerRole.password());
-        dataSource.setDatabaseName(configuration.databaseName());
+        dataSource.setDatabaseName(databaseName);
         dataSource.setSsl(configuration.databaseUseTLS());
 
         final var installDataSource =
@@ -382,42 +943,109 @@ public abstract class DPQDatabaseFactory<
           resources.add(closeable);
         }
 
-        final var parsers = new TrSchemaRevisionSetParsers();
-        final TrSchemaRevisionSet revisions;
+        final byte[] schema;
         try (var stream = this.onRequireDatabaseSchemaXML()) {
-          final var parser =
-            parsers.createParserWithContext(
-              configuration.saxParsers()
-                .orElseGet(JXEHardenedSAXParsers::new),
-              URI.create("urn:source"),
-              stream,
-              parseStatus -> {
-
-              }
-            );
-          revisions = parser.execute();
+          schema = stream.readAllBytes();
         }
 
         try (var connection = installDataSource.getConnection()) {
           connection.setAutoCommit(false);
 
-          new TrExecutors().create(
-            new TrExecutorConfiguration(
-              this::schemaVersionGet,
-              this::schemaVersionSet,
-              event -> this.publishTrEvent(startupMessages, event),
-              revisions,
-              switch (configuration.upgrade()) {
-                case UPGRADE_DATABASE -> PERFORM_UPGRADES;
-                case DO_NOT_UPGRADE_DATABASE -> FAIL_INSTEAD_OF_UPGRADING;
-              },
-              schemaArguments,
-              connection
-            )
-          ).execute();
-
-          this.onPostUpgrade(configuration, connection);
-          connection.commit();
+          /*
+           * A tenant's schema is created and made current for the session
+           * before anything else, so that the version table and all schema
+           * statements resolve to the tenant's schema.
+           */
+
+          if (tenant.isPresent()) {
+            final var name = quoteIdentifier(tenant.get().schema());
+            try (var st = connection.createStatement()) {
+              st.execute("CREATE SCHEMA IF NOT EXISTS " + name);
+              st.execute("SET search_path TO " + name);
+            }
+            connection.commit();
+          }
+
+          /*
+           * The schema is only parsed if the latest version is not already
+           * known, or if the database is not at the latest known version.
+           */
+
+          final var checksum =
+            DDatabaseSchemaSummary.checksumOf(schema);
+          final var current =
+            this.schemaVersionGet(connection);
+
+          final var known =
+            this.schemaLatestKnown(checksum);
+
+          final Optional<TrSchemaRevisionSet> revisions;
+          if (known.isPresent() && Objects.equals(current, known)) {
+            revisions = Optional.empty();
+          } else {
+            revisions = Optional.of(
+              this.schemaParse(configuration, schema, checksum)
+            );
+          }
+
+          final var latest =
+            revisions.map(r -> r.revisions().lastKey())
+              .or(() -> known)
+              .orElseThrow();
+
+          if (Objects.equals(current, Optional.of(latest))) {
+            this.publishEvent(
+              startupMessages,
+              String.format("Database is already at version %s", latest)
+            );
+            this.onPostUpgrade(configuration, connection);
+            connection.commit();
+          } else {
+            this.lockForUpgrade(
+              configuration,
+              connection,
+              lockKey,
+              startupMessages
+            );
+
+            try {
+              final var timer =
+                new DDatabaseUpgradeTimer(configuration.telemetry());
+
+              try (timer) {
+                switch (configuration.upgrade()) {
+                  case UPGRADE_DATABASE -> {
+                    this.upgrade(
+                      configuration,
+                      connection,
+                      dataSource,
+                      schema,
+                      revisions.orElseThrow(),
+                      schemaArguments,
+                      timer,
+                      startupMessages
+                    );
+                  }
+                  case DO_NOT_UPGRADE_DATABASE -> {
+                    this.executeRevisions(
+                      connection,
+                      revisions.orElseThrow(),
+                      FAIL_INSTEAD_OF_UPGRADING,
+                      schemaArguments,
+                      timer,
+                      startupMessages
+                    );
+                  }
+                }
+              }
+              this.publishSlowestStatements(startupMessages, timer);
+
+              this.onPostUpgrade(configuration, connection);
+              connection.commit();
+            } finally {
+              this.unlockAfterUpgrade(connection, lockKey);
+            }
+          }
         }
       }
     } catch (final Exception e) {
@@ -427,6 +1055,310 @@ public abstract class DPQDatabaseFactory<
     }
   }
 
+  /*
+   * Revisions that consist of non-transactional statements are applied
+   * separately from the schema executor, in the order of their versions:
+   * the executor applies each run of ordinary revisions leading up to such a
+   * revision, and the revision's statements are then executed in
+   * auto-commit mode. The schema version is only advanced (in a transaction
+   * of its own) once all of the revision's statements have succeeded, so
+   * that a revision that fails part way through is attempted again in full
+   * by the next upgrade. The schema version is read again here because the
+   * database may have been upgraded whilst this process waited for the
+   * upgrade lock.
+   */
+
+  private void upgrade(
+    final C configuration,
+    final Connection connection,
+    final DataSource progressSource,
+    final byte[] schema,
+    final TrSchemaRevisionSet revisions,
+    final TrArguments schemaArguments,
+    final DDatabaseUpgradeTimer timer,
+    final Consumer<String> startupMessages)
+    throws Exception
+  {
+    final var plan =
+      DPQUpgradePlan.parse(schema);
+    final var latest =
+      revisions.revisions().lastKey();
+    final var nonTransactional =
+      new DPQNonTransactional(
+        this.logger(),
+        connection,
+        progressSource,
+        configuration.upgradeProgressInterval(),
+        timer,
+        message -> this.publishEvent(startupMessages, message)
+      );
+
+    for (final var step : plan.stepsAfter(this.schemaVersionGet(connection))) {
+      switch (step) {
+        case final DPQUpgradePlan.StepTransactional s -> {
+          final TrSchemaRevisionSet partial;
+          if (Objects.equals(s.versionLast(), latest)) {
+            partial = revisions;
+          } else {
+            partial = this.schemaParse(
+              configuration,
+              s.schema(),
+              DDatabaseSchemaSummary.checksumOf(s.schema())
+            );
+          }
+
+          this.executeRevisions(
+            connection,
+            partial,
+            PERFORM_UPGRADES,
+            schemaArguments,
+            timer,
+            startupMessages
+          );
+        }
+        case final DPQUpgradePlan.StepNonTransactional s -> {
+          final var current = this.schemaVersionGet(connection);
+          timer.upgrading(s.version());
+          this.publishEvent(
+            startupMessages,
+            String.format(
+              "Upgrading database from version %s -> %s (non-transactional)",
+              current.map(BigInteger::toString).orElse("(none)"),
+              s.version())
+          );
+          nonTransactional.execute(s);
+          this.schemaVersionSet(s.version(), connection);
+          connection.commit();
+        }
+      }
+    }
+  }
+
+  private void executeRevisions(
+    final Connection connection,
+    final TrSchemaRevisionSet revisions,
+    final TrExecutorUpgrade upgrade,
+    final TrArguments schemaArguments,
+    final DDatabaseUpgradeTimer timer,
+    final Consumer<String> startupMessages)
+    throws Exception
+  {
+    /*
+     * The schema executor reports when each statement starts, but not when
+     * it finishes. The statement is ended before the schema version is
+     * read or written so that the time taken to do so is not attributed to
+     * the last statement of each revision.
+     */
+
+    new TrExecutors().create(
+      new TrExecutorConfiguration(
+        c -> {
+          timer.executed();
+          return this.schemaVersionGet(c);
+        },
+        (v, c) -> {
+          timer.executed();
+          this.schemaVersionSet(v, c);
+        },
+        event -> this.publishTrEvent(startupMessages, timer, event),
+        revisions,
+        upgrade,
+        schemaArguments,
+        connection
+      )
+    ).execute();
+  }
+
+  /*
+   * The latest schema version is known without parsing the schema if the
+   * factory has already parsed an identical schema, or if the application
+   * supplied a summary that matches the schema.
+   */
+
+  private Optional<BigInteger> schemaLatestKnown(
+    final String checksum)
+  {
+    final var remembered = this.latestVersions.get(checksum);
+    if (remembered != null) {
+      return Optional.of(remembered);
+    }
+
+    final var summary = this.onRequireDatabaseSchemaSummary();
+    if (summary.isPresent()) {
+      if (Objects.equals(summary.get().checksum(), checksum)) {
+        return Optional.of(summary.get().latestVersion());
+      }
+      this.logger().warn(
+        "Ignoring schema summary with checksum {} (schema checksum is {})",
+        summary.get().checksum(),
+        checksum
+      );
+    }
+    return Optional.empty();
+  }
+
+  private BigInteger schemaLatest(
+    final C configuration)
+    throws Exception
+  {
+    final byte[] schema;
+    try (var stream = this.onRequireDatabaseSchemaXML()) {
+      schema = stream.readAllBytes();
+    }
+
+    final var checksum = DDatabaseSchemaSummary.checksumOf(schema);
+    final var known = this.schemaLatestKnown(checksum);
+    if (known.isPresent()) {
+      return known.get();
+    }
+    return this.schemaParse(configuration, schema, checksum)
+      .revisions()
+      .lastKey();
+  }
+
+  private TrSchemaRevisionSet schemaParse(
+    final C configuration,
+    final byte[] schema,
+    final String checksum)
+    throws Exception
+  {
+    final var parsers = new TrSchemaRevisionSetParsers();
+    final TrSchemaRevisionSet revisions;
+    try (var stream = new ByteArrayInputStream(schema)) {
+      final var parser =
+        parsers.createParserWithContext(
+          configuration.saxParsers()
+            .orElseGet(JXEHardenedSAXParsers::new),
+          URI.create("urn:source"),
+          stream,
+          parseStatus -> {
+
+          }
+        );
+      revisions = parser.execute();
+    }
+
+    this.latestVersions.put(checksum, revisions.revisions().lastKey());
+    return revisions;
+  }
+
+  /*
+   * The lock is held by the session rather than the setup transaction,
+   * because non-transactional statements commit the upgrade part way
+   * through. It is released explicitly when the upgrade finishes, and
+   * processes that were waiting for the lock will then find (via the
+   * executor, which reads the schema version again once the lock is held)
+   * that the schema is current.
+   *
+   * The lock is acquired by polling outside of any transaction. A process
+   * that blocked in pg_advisory_lock() inside its setup transaction would
+   * hold a snapshot for as long as it waited, and statements such as
+   * CREATE INDEX CONCURRENTLY executed by the process holding the lock
+   * wait for every transaction with an older snapshot to finish; the two
+   * processes would then wait for each other.
+   */
+
+  private void lockForUpgrade(
+    final C configuration,
+    final Connection connection,
+    final long key,
+    final Consumer<String> startupMessages)
+    throws SQLException, DDatabaseException, InterruptedException
+  {
+    final var timeout = configuration.upgradeLockTimeout();
+
+    this.publishEvent(
+      startupMessages,
+      String.format("Acquiring upgrade lock %d", Long.valueOf(key))
+    );
+
+    connection.commit();
+    connection.setAutoCommit(true);
+
+    try (var st = connection.prepareStatement(
+      "SELECT pg_try_advisory_lock(?)")) {
+      st.setLong(1, key);
+
+      final var timeStart = System.nanoTime();
+      var pause = UPGRADE_LOCK_PAUSE_INITIAL;
+      while (!tryLock(st)) {
+        final var waited = Duration.ofNanos(System.nanoTime() - timeStart);
+        if (!timeout.isZero() && waited.compareTo(timeout) >= 0) {
+          throw new DDatabaseException(
+            "Timed out waiting for another process to upgrade the database.",
+            "error-database-upgrade-lock-timeout",
+            Map.of(
+              "Lock", Long.toString(key),
+              "Timeout", timeout.toString()
+            ),
+            Optional.empty()
+          );
+        }
+
+        if (timeout.isZero()) {
+          Thread.sleep(pause);
+        } else {
+          final var remaining = timeout.minus(waited).toMillis();
+          Thread.sleep(Math.max(1L, Math.min(pause, remaining)));
+        }
+        pause = Math.min(pause * 2L, UPGRADE_LOCK_PAUSE_MAXIMUM);
+      }
+    } finally {
+      connection.setAutoCommit(false);
+    }
+
+    Span.current().addEvent("AcquiredUpgradeLock");
+  }
+
+  private static boolean tryLock(
+    final PreparedStatement statement)
+    throws SQLException
+  {
+    try (var result = statement.executeQuery()) {
+      return result.next() && result.getBoolean(1);
+    }
+  }
+
+  private void unlockAfterUpgrade(
+    final Connection connection,
+    final long key)
+  {
+    try {
+      connection.rollback();
+      try (var st = connection.prepareStatement(
+        "SELECT pg_advisory_unlock(?)")) {
+        st.setLong(1, key);
+        st.execute();
+      }
+      connection.commit();
+    } catch (final SQLException e) {
+      this.logger().warn("Failed to release the upgrade lock: ", e);
+    }
+  }
+
+  /*
+   * Each tenant schema is upgraded under its own lock, so that tenants can
+   * be upgraded in parallel.
+   */
+
+  private static long upgradeLockKey(
+    final RDottedName applicationId,
+    final Optional<DPQTenant> tenant)
+  {
+    final var name =
+      tenant.map(t -> applicationId.value() + "/" + t.schema())
+        .orElseGet(applicationId::value);
+
+    try {
+      final var digest =
+        MessageDigest.getInstance("SHA-256")
+          .digest(name.getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   private static CloseableCollectionType<DDatabaseException> createCloseableResources()
   {
     return CloseableCollection.create(() -> {
@@ -459,11 +1391,35 @@ public abstract class DPQDatabaseFactory<
     }
   }
 
+  private void publishSlowestStatements(
+    final Consumer<String> startupMessages,
+    final DDatabaseUpgradeTimer timer)
+  {
+    final var slowest = timer.slowest(SLOWEST_STATEMENTS);
+    if (slowest.isEmpty()) {
+      return;
+    }
+
+    this.publishEvent(startupMessages, "Slowest upgrade statements:");
+    for (final var timing : slowest) {
+      this.publishEvent(
+        startupMessages,
+        String.format(
+          "  %s (version %s): %s",
+          timing.duration(),
+          timing.version(),
+          timing.statementSummary())
+      );
+    }
+  }
+
   private void publishTrEvent(
     final Consumer<String> startupMessages,
+    final DDatabaseUpgradeTimer timer,
     final TrEventType event)
   {
     if (event instanceof final TrEventExecutingSQL sql) {
+      timer.executing(sql.statement());
       this.publishEvent(
         startupMessages,
         String.format("Executing SQL: %s", sql.statement())
@@ -472,6 +1428,7 @@ public abstract class DPQDatabaseFactory<
     }
 
     if (event instanceof final TrEventUpgrading upgrading) {
+      timer.upgrading(upgrading.toVersion());
       this.publishEvent(
         startupMessages,
         String.format(
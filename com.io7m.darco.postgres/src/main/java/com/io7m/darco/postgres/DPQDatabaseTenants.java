@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.postgres;
+
+import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseType;
+import com.io7m.jmulticlose.core.CloseableCollectionType;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A set of tenant databases that live in separate schemas of a single
+ * PostgreSQL database and share one worker data source. Connections opened
+ * by a tenant's database have the search path set to the tenant's schema
+ * for as long as they are held. The tenants' databases, and then the shared
+ * data source, are closed when this object is closed.
+ *
+ * @param <D> The type of database
+ *
+ * @see DPQDatabaseFactory#openTenants(DPQDatabaseConfigurationType, java.util.Collection, Consumer)
+ */
+
+public final class DPQDatabaseTenants<D extends DDatabaseType<?, ?, ?, ?>>
+  implements AutoCloseable
+{
+  private final OpenerType<D> opener;
+  private final CloseableCollectionType<DDatabaseException> resources;
+  private final ConcurrentHashMap<DPQTenant, D> databases;
+
+  interface OpenerType<D>
+  {
+    D open(
+      DPQTenant tenant,
+      Consumer<String> startupMessages)
+      throws DDatabaseException;
+  }
+
+  DPQDatabaseTenants(
+    final OpenerType<D> inOpener,
+    final CloseableCollectionType<DDatabaseException> inResources,
+    final Map<DPQTenant, D> inDatabases)
+  {
+    this.opener =
+      Objects.requireNonNull(inOpener, "opener");
+    this.resources =
+      Objects.requireNonNull(inResources, "resources");
+    this.databases =
+      new ConcurrentHashMap<>(
+        Objects.requireNonNull(inDatabases, "databases")
+      );
+  }
+
+  /**
+   * @return The tenants that are currently open
+   */
+
+  public Set<DPQTenant> tenants()
+  {
+    return Set.copyOf(this.databases.keySet());
+  }
+
+  /**
+   * Retrieve the database for the given tenant.
+   *
+   * @param tenant The tenant
+   *
+   * @return The tenant's database
+   *
+   * @throws DDatabaseException If the tenant is not open
+   */
+
+  public D tenant(
+    final DPQTenant tenant)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(tenant, "tenant");
+
+    final var database = this.databases.get(tenant);
+    if (database == null) {
+      throw new DDatabaseException(
+        "No such tenant.",
+        "error-tenant-nonexistent",
+        Map.of("Tenant", tenant.schema()),
+        Optional.empty()
+      );
+    }
+    return database;
+  }
+
+  /**
+   * Add a tenant, creating and upgrading the tenant's schema if necessary.
+   * If the tenant is already open, the existing database is returned.
+   *
+   * @param tenant          The tenant
+   * @param startupMessages A function that will receive startup messages
+   *
+   * @return The tenant's database
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  public D createTenant(
+    final DPQTenant tenant,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(tenant, "tenant");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    final var existing = this.databases.get(tenant);
+    if (existing != null) {
+      return existing;
+    }
+
+    final var database = this.opener.open(tenant, startupMessages);
+    final var winner = this.databases.putIfAbsent(tenant, database);
+    if (winner != null) {
+      database.close();
+      return winner;
+    }
+    return this.resources.add(database);
+  }
+
+  @Override
+  public void close()
+    throws DDatabaseException
+  {
+    this.resources.close();
+  }
+}
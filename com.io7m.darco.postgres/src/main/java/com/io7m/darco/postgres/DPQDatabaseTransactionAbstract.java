@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.darco.postgres;
+
+import com.io7m.darco.api.DDatabaseConnectionType;
+import com.io7m.darco.api.DDatabaseQueryProviderType;
+import com.io7m.darco.api.DDatabaseTransactionAbstract;
+import com.io7m.darco.api.DDatabaseTransactionCloseBehavior;
+import com.io7m.darco.api.DDatabaseTransactionOptions;
+import com.io7m.darco.api.DDatabaseTransactionType;
+import io.opentelemetry.api.trace.Span;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.io7m.darco.api.DDatabaseDurability.RELAXED;
+import static com.io7m.darco.api.DDatabaseTransactionMode.READ_ONLY;
+
+/**
+ * An abstract implementation of the transaction type for PostgreSQL
+ * databases.
+ *
+ * <p>Transaction options are applied with {@code SET TRANSACTION} and
+ * {@code SET LOCAL}, and so last exactly as long as each unit of work. The
+ * server enforces the query timeout itself, using it as both the statement
+ * and the lock timeout, and so no client-side deadline is scheduled for
+ * each query. Cancelling the transaction, or exceeding the transaction
+ * timeout, sends a cancel request for the connection's server process.</p>
+ *
+ * @param <C> The type of database configuration
+ * @param <T> The type of database transactions
+ * @param <N> The type of database connections
+ * @param <Q> The precise type of database query providers
+ */
+
+public abstract class DPQDatabaseTransactionAbstract<
+  C extends DPQDatabaseConfigurationType,
+  N extends DDatabaseConnectionType<T>,
+  T extends DDatabaseTransactionType,
+  Q extends DDatabaseQueryProviderType<T, ?, ?, ?>>
+  extends DDatabaseTransactionAbstract<C, N, T, Q>
+{
+  private static final String SQLSTATE_QUERY_CANCELED = "57014";
+  private static final String SQLSTATE_LOCK_NOT_AVAILABLE = "55P03";
+
+  protected DPQDatabaseTransactionAbstract(
+    final DDatabaseTransactionCloseBehavior inCloseBehavior,
+    final C inConfiguration,
+    final N inConnection,
+    final Span inTransactionScope,
+    final Map<Class<?>, Q> inQueries)
+  {
+    super(
+      inCloseBehavior,
+      inConfiguration,
+      inConnection,
+      inTransactionScope,
+      inQueries
+    );
+  }
+
+  @Override
+  protected final void onBegin(
+    final DDatabaseTransactionOptions transactionOptions)
+    throws SQLException
+  {
+    final var statements = new ArrayList<String>(5);
+    transactionOptions.isolationLevel().ifPresent(level -> {
+      statements.add("SET TRANSACTION ISOLATION LEVEL " + level.sqlName());
+    });
+    if (transactionOptions.durability() == RELAXED) {
+      statements.add("SET LOCAL synchronous_commit = off");
+    }
+    if (transactionOptions.mode() == READ_ONLY) {
+      statements.add("SET TRANSACTION READ ONLY");
+    }
+    transactionOptions.queryTimeout().ifPresent(d -> {
+      final var millis = Math.max(1L, d.toMillis());
+      statements.add("SET LOCAL lock_timeout = " + millis);
+      statements.add("SET LOCAL statement_timeout = " + millis);
+    });
+    if (statements.isEmpty()) {
+      return;
+    }
+
+    final var c = this.connection();
+    try (var st = c.createStatement()) {
+      this.recordRoundTrip();
+      st.execute(String.join("; ", statements));
+    }
+  }
+
+  @Override
+  protected final void onCancel(
+    final Connection c)
+    throws SQLException
+  {
+    c.unwrap(PGConnection.class).cancelQuery();
+  }
+
+  @Override
+  protected final boolean isQueryTimeoutEnforcedByDatabase()
+  {
+    return true;
+  }
+
+  @Override
+  protected final boolean isDeadlineException(
+    final SQLException e)
+  {
+    final var sqlState = e.getSQLState();
+    final var transactionOptions = this.options();
+    if (Objects.equals(sqlState, SQLSTATE_QUERY_CANCELED)) {
+      return transactionOptions.queryTimeout().isPresent();
+    }
+    if (Objects.equals(sqlState, SQLSTATE_LOCK_NOT_AVAILABLE)) {
+      return transactionOptions.queryTimeout().isPresent();
+    }
+    return false;
+  }
+}
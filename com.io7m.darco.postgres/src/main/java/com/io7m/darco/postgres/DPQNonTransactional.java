@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.postgres;
+
+import com.io7m.darco.api.DDatabaseUpgradeTimer;
+import org.slf4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The execution of schema revisions that consist of statements marked with
+ * {@link DPQDatabaseFactory#NON_TRANSACTIONAL}. The work performed so far is
+ * committed, and each statement is then executed in auto-commit mode on the
+ * upgrade connection. Progress is reported periodically whilst each
+ * statement is executing; the progress of every upgrade in the process is
+ * polled from a single shared thread.
+ */
+
+final class DPQNonTransactional
+{
+  private static final ScheduledThreadPoolExecutor PROGRESS =
+    createProgressScheduler();
+
+  private static final String PROGRESS_QUERY = """
+    SELECT phase, blocks_done, blocks_total, tuples_done, tuples_total
+      FROM pg_stat_progress_create_index
+      WHERE pid = ?
+    """;
+
+  private final Logger logger;
+  private final Connection connection;
+  private final DataSource progressSource;
+  private final Duration progressInterval;
+  private final DDatabaseUpgradeTimer timer;
+  private final Consumer<String> messages;
+
+  DPQNonTransactional(
+    final Logger inLogger,
+    final Connection inConnection,
+    final DataSource inProgressSource,
+    final Duration inProgressInterval,
+    final DDatabaseUpgradeTimer inTimer,
+    final Consumer<String> inMessages)
+  {
+    this.logger =
+      Objects.requireNonNull(inLogger, "logger");
+    this.connection =
+      Objects.requireNonNull(inConnection, "connection");
+    this.progressSource =
+      Objects.requireNonNull(inProgressSource, "progressSource");
+    this.progressInterval =
+      Objects.requireNonNull(inProgressInterval, "progressInterval");
+    this.timer =
+      Objects.requireNonNull(inTimer, "timer");
+    this.messages =
+      Objects.requireNonNull(inMessages, "messages");
+  }
+
+  private static ScheduledThreadPoolExecutor createProgressScheduler()
+  {
+    final var executor =
+      new ScheduledThreadPoolExecutor(
+        1,
+        Thread.ofPlatform()
+          .name("com.io7m.darco.postgres.progress")
+          .daemon(true)
+          .factory()
+      );
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  /**
+   * Execute the statements of the given revision. The schema version is not
+   * changed.
+   *
+   * @param step The revision
+   *
+   * @throws SQLException On errors
+   */
+
+  void execute(
+    final DPQUpgradePlan.StepNonTransactional step)
+    throws SQLException
+  {
+    this.connection.commit();
+    this.connection.setAutoCommit(true);
+
+    try {
+      final var pid = this.backendPid();
+      for (final var text : step.statements()) {
+        this.executeStatement(pid, text);
+      }
+    } finally {
+      this.connection.setAutoCommit(false);
+    }
+  }
+
+  private void executeStatement(
+    final int pid,
+    final String text)
+    throws SQLException
+  {
+    this.logger.debug("Executing outside of transaction: {}", text);
+    this.messages.accept(String.format("Executing SQL: %s", text));
+
+    final var timeStart = System.nanoTime();
+    final var interval = Math.max(1L, this.progressInterval.toMillis());
+    final var progress =
+      PROGRESS.scheduleWithFixedDelay(
+        () -> this.reportProgress(pid, timeStart),
+        interval,
+        interval,
+        TimeUnit.MILLISECONDS
+      );
+
+    try (var st = this.connection.createStatement()) {
+      this.timer.executing(text);
+      st.execute(text);
+      this.timer.executed();
+    } finally {
+      progress.cancel(false);
+    }
+  }
+
+  private int backendPid()
+    throws SQLException
+  {
+    try (var st = this.connection.createStatement()) {
+      try (var rs = st.executeQuery("SELECT pg_backend_pid()")) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  private void reportProgress(
+    final int pid,
+    final long timeStart)
+  {
+    final var elapsed =
+      Duration.ofNanos(System.nanoTime() - timeStart)
+        .truncatedTo(ChronoUnit.SECONDS);
+
+    try (var c = this.progressSource.getConnection()) {
+      try (var st = c.prepareStatement(PROGRESS_QUERY)) {
+        st.setInt(1, pid);
+        try (var rs = st.executeQuery()) {
+          if (rs.next()) {
+            this.messages.accept(
+              String.format(
+                "Statement running for %s: %s (blocks %d/%d, tuples %d/%d)",
+                elapsed,
+                rs.getString(1),
+                Long.valueOf(rs.getLong(2)),
+                Long.valueOf(rs.getLong(3)),
+                Long.valueOf(rs.getLong(4)),
+                Long.valueOf(rs.getLong(5))
+              )
+            );
+          } else {
+            this.messages.accept(
+              String.format("Statement running for %s", elapsed)
+            );
+          }
+        }
+      }
+    } catch (final SQLException e) {
+      this.logger.debug("Failed to query statement progress: ", e);
+    }
+  }
+}
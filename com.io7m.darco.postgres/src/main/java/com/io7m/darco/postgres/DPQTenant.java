@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.postgres;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A tenant in a schema-per-tenant database. Each tenant's tables live in
+ * a PostgreSQL schema of the same name.
+ *
+ * @param schema The schema name
+ *
+ * @see DPQDatabaseFactory#openTenants(DPQDatabaseConfigurationType, java.util.Collection, java.util.function.Consumer)
+ */
+
+public record DPQTenant(
+  String schema)
+{
+  private static final Pattern VALID_SCHEMA =
+    Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+  /**
+   * A tenant in a schema-per-tenant database.
+   *
+   * @param schema The schema name
+   */
+
+  public DPQTenant
+  {
+    Objects.requireNonNull(schema, "schema");
+
+    if (!VALID_SCHEMA.matcher(schema).matches()) {
+      throw new IllegalArgumentException(
+        "Schema name '%s' must match %s".formatted(schema, VALID_SCHEMA)
+      );
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.postgres;
+
+import org.slf4j.Logger;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Objects;
+
+/**
+ * A data source that hands out connections from a shared data source with
+ * the search path set to a tenant's schema. The search path is reset when
+ * each connection is closed, before the connection is returned to any
+ * underlying pool; if it cannot be reset, the connection is aborted so that
+ * it is never reused with the tenant's search path. Connections for the
+ * role used to create the shared data source are taken from it directly,
+ * so that pools that do not support per-connection credentials can be
+ * shared.
+ */
+
+final class DPQTenantDataSource implements DataSource
+{
+  private final Logger logger;
+  private final DataSource delegate;
+  private final String sharedUser;
+  private final DPQTenant tenant;
+
+  DPQTenantDataSource(
+    final Logger inLogger,
+    final DataSource inDelegate,
+    final String inSharedUser,
+    final DPQTenant inTenant)
+  {
+    this.logger =
+      Objects.requireNonNull(inLogger, "logger");
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    this.sharedUser =
+      Objects.requireNonNull(inSharedUser, "sharedUser");
+    this.tenant =
+      Objects.requireNonNull(inTenant, "tenant");
+  }
+
+  @Override
+  public Connection getConnection()
+    throws SQLException
+  {
+    return this.prepare(this.delegate.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(
+    final String username,
+    final String password)
+    throws SQLException
+  {
+    if (Objects.equals(username, this.sharedUser)) {
+      return this.getConnection();
+    }
+    return this.prepare(this.delegate.getConnection(username, password));
+  }
+
+  private Connection prepare(
+    final Connection connection)
+    throws SQLException
+  {
+    final var name =
+      DPQDatabaseFactory.quoteIdentifier(this.tenant.schema());
+
+    try {
+      executeOutsideTransaction(connection, "SET search_path TO " + name);
+    } catch (final SQLException e) {
+      try {
+        connection.close();
+      } catch (final SQLException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+
+    return (Connection) Proxy.newProxyInstance(
+      DPQTenantDataSource.class.getClassLoader(),
+      new Class<?>[]{Connection.class},
+      (proxy, method, args) -> {
+        if ("close".equals(method.getName()) && !connection.isClosed()) {
+          this.reset(connection);
+        }
+        try {
+          return method.invoke(connection, args);
+        } catch (final InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+    );
+  }
+
+  /*
+   * A connection whose search path could not be reset is aborted rather
+   * than returned to the pool as it is; the pool will discard it instead
+   * of handing it, still set to the tenant's schema, to another user.
+   */
+
+  private void reset(
+    final Connection connection)
+  {
+    try {
+      if (!connection.getAutoCommit()) {
+        connection.rollback();
+      }
+      executeOutsideTransaction(connection, "RESET search_path");
+    } catch (final SQLException e) {
+      this.logger.warn(
+        "Failed to reset the search path for tenant {}; aborting: ",
+        this.tenant.schema(),
+        e
+      );
+      try {
+        connection.abort(Runnable::run);
+      } catch (final SQLException ex) {
+        this.logger.warn("Failed to abort connection: ", ex);
+      }
+    }
+  }
+
+  /*
+   * Session settings are changed in autocommit mode so that they take
+   * effect without a separate COMMIT. Switching the connection in and out
+   * of autocommit mode does not involve the server when no transaction is
+   * open, so each change costs a single round trip.
+   */
+
+  private static void executeOutsideTransaction(
+    final Connection connection,
+    final String sql)
+    throws SQLException
+  {
+    final var autoCommit = connection.getAutoCommit();
+    if (!autoCommit) {
+      connection.setAutoCommit(true);
+    }
+    try (var st = connection.createStatement()) {
+      st.execute(sql);
+    } finally {
+      if (!autoCommit) {
+        connection.setAutoCommit(false);
+      }
+    }
+  }
+
+  @Override
+  public PrintWriter getLogWriter()
+    throws SQLException
+  {
+    return this.delegate.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(
+    final PrintWriter out)
+    throws SQLException
+  {
+    this.delegate.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(
+    final int seconds)
+    throws SQLException
+  {
+    this.delegate.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout()
+    throws SQLException
+  {
+    return this.delegate.getLoginTimeout();
+  }
+
+  @Override
+  public java.util.logging.Logger getParentLogger()
+    throws SQLFeatureNotSupportedException
+  {
+    return this.delegate.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(
+    final Class<T> iface)
+    throws SQLException
+  {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    return this.delegate.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(
+    final Class<?> iface)
+    throws SQLException
+  {
+    return iface.isInstance(this) || this.delegate.isWrapperFor(iface);
+  }
+}
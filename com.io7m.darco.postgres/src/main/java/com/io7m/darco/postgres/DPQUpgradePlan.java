@@ -0,0 +1,281 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.postgres;
+
+import com.io7m.darco.api.DDatabaseException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A schema divided into the steps in which it is applied. Runs of
+ * consecutive revisions that can be executed within a transaction are
+ * applied by the schema executor, and each revision consisting of
+ * statements marked with {@link DPQDatabaseFactory#NON_TRANSACTIONAL} is
+ * applied separately, one statement at a time, in auto-commit mode.
+ */
+
+final class DPQUpgradePlan
+{
+  private static final String SCHEMA = "Schema";
+  private static final String STATEMENT = "Statement";
+  private static final String VERSION = "versionCurrent";
+
+  private final byte[] schema;
+  private final Document document;
+  private final TreeSet<BigInteger> versions;
+  private final TreeMap<BigInteger, List<String>> nonTransactional;
+
+  /**
+   * A step in which the schema executor applies every revision up to and
+   * including the given version.
+   *
+   * @param versionLast The last version applied
+   * @param schema      A schema containing the revisions up to the version
+   */
+
+  record StepTransactional(
+    BigInteger versionLast,
+    byte[] schema)
+    implements StepType
+  {
+    StepTransactional
+    {
+      Objects.requireNonNull(versionLast, "versionLast");
+      Objects.requireNonNull(schema, "schema");
+    }
+  }
+
+  /**
+   * A step that applies a revision consisting of non-transactional
+   * statements.
+   *
+   * @param version    The version
+   * @param statements The statements
+   */
+
+  record StepNonTransactional(
+    BigInteger version,
+    List<String> statements)
+    implements StepType
+  {
+    StepNonTransactional
+    {
+      Objects.requireNonNull(version, "version");
+      statements = List.copyOf(statements);
+    }
+  }
+
+  /**
+   * A step of an upgrade.
+   */
+
+  sealed interface StepType
+    permits StepTransactional, StepNonTransactional
+  {
+
+  }
+
+  private DPQUpgradePlan(
+    final byte[] inSchema,
+    final Document inDocument,
+    final TreeSet<BigInteger> inVersions,
+    final TreeMap<BigInteger, List<String>> inNonTransactional)
+  {
+    this.schema =
+      Objects.requireNonNull(inSchema, "schema");
+    this.document =
+      Objects.requireNonNull(inDocument, "document");
+    this.versions =
+      Objects.requireNonNull(inVersions, "versions");
+    this.nonTransactional =
+      Objects.requireNonNull(inNonTransactional, "nonTransactional");
+  }
+
+  /**
+   * Divide the given schema into steps.
+   *
+   * @param schema The schema XML
+   *
+   * @return The plan
+   *
+   * @throws DDatabaseException If a revision mixes transactional and
+   *                            non-transactional statements
+   * @throws IOException        On I/O errors
+   * @throws SAXException       On parse errors
+   */
+
+  static DPQUpgradePlan parse(
+    final byte[] schema)
+    throws DDatabaseException, IOException, SAXException
+  {
+    final Document document;
+    try {
+      final var factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setFeature(
+        "http://apache.org/xml/features/disallow-doctype-decl",
+        true
+      );
+      try (var stream = new ByteArrayInputStream(schema)) {
+        document = factory.newDocumentBuilder().parse(stream);
+      }
+    } catch (final ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+
+    final var versions = new TreeSet<BigInteger>();
+    final var nonTransactional = new TreeMap<BigInteger, List<String>>();
+
+    for (final var element : schemaElements(document)) {
+      final var version = new BigInteger(element.getAttribute(VERSION));
+      versions.add(version);
+
+      final var marked = new ArrayList<String>();
+      var unmarked = 0;
+      final var children = element.getChildNodes();
+      for (int index = 0; index < children.getLength(); ++index) {
+        if (children.item(index) instanceof final Element child
+            && Objects.equals(child.getLocalName(), STATEMENT)) {
+          final var text = child.getTextContent();
+          if (text.strip().startsWith(DPQDatabaseFactory.NON_TRANSACTIONAL)) {
+            marked.add(text);
+          } else {
+            ++unmarked;
+          }
+        }
+      }
+
+      if (!marked.isEmpty() && unmarked > 0) {
+        throw new DDatabaseException(
+          "A schema revision mixes transactional and non-transactional statements.",
+          "error-database-schema-mixed-statements",
+          Map.of("Version", version.toString()),
+          Optional.of(
+            "Move the non-transactional statements into a revision of their own."
+          )
+        );
+      }
+      if (!marked.isEmpty()) {
+        nonTransactional.put(version, List.copyOf(marked));
+      }
+    }
+
+    return new DPQUpgradePlan(schema, document, versions, nonTransactional);
+  }
+
+  private static List<Element> schemaElements(
+    final Document document)
+  {
+    final var results = new ArrayList<Element>();
+    final var children = document.getDocumentElement().getChildNodes();
+    for (int index = 0; index < children.getLength(); ++index) {
+      if (children.item(index) instanceof final Element child
+          && Objects.equals(child.getLocalName(), SCHEMA)) {
+        results.add(child);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Determine the steps required to upgrade a database at the given version.
+   *
+   * @param current The current version, if the database has one
+   *
+   * @return The steps
+   *
+   * @throws TransformerException On errors producing partial schemas
+   */
+
+  List<StepType> stepsAfter(
+    final Optional<BigInteger> current)
+    throws TransformerException
+  {
+    if (this.versions.isEmpty()) {
+      return List.of();
+    }
+
+    final var steps = new ArrayList<StepType>();
+    var from = current.orElse(BigInteger.ONE.negate());
+
+    final var pending =
+      this.nonTransactional.tailMap(from, false).entrySet();
+
+    for (final var entry : pending) {
+      final var version = entry.getKey();
+      final var before = this.versions.subSet(from, false, version, false);
+      if (!before.isEmpty()) {
+        steps.add(
+          new StepTransactional(before.last(), this.schemaUpTo(before.last()))
+        );
+      }
+      steps.add(new StepNonTransactional(version, entry.getValue()));
+      from = version;
+    }
+
+    final var latest = this.versions.last();
+    if (latest.compareTo(from) > 0) {
+      steps.add(new StepTransactional(latest, this.schemaUpTo(latest)));
+    }
+    return List.copyOf(steps);
+  }
+
+  private byte[] schemaUpTo(
+    final BigInteger version)
+    throws TransformerException
+  {
+    if (version.equals(this.versions.last())) {
+      return this.schema;
+    }
+
+    final var copy = (Document) this.document.cloneNode(true);
+    for (final var element : schemaElements(copy)) {
+      final var elementVersion = new BigInteger(element.getAttribute(VERSION));
+      if (elementVersion.compareTo(version) > 0) {
+        element.getParentNode().removeChild(element);
+      }
+    }
+
+    final var output = new ByteArrayOutputStream();
+    TransformerFactory.newInstance()
+      .newTransformer()
+      .transform(new DOMSource(copy), new StreamResult(output));
+    return output.toByteArray();
+  }
+}
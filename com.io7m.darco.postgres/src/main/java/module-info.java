@@ -27,6 +27,7 @@ module com.io7m.darco.postgres
 
   requires java.sql;
   requires java.naming;
+  requires java.xml;
 
   requires com.io7m.anethum.api;
   requires com.io7m.jmulticlose.core;
@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseTelemetryType;
+import com.io7m.darco.api.DDatabaseType;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.core.DB;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The implementation of online backups.
+ */
+
+final class DSBackup
+{
+  private static final AttributeKey<Long> PAGES_COPIED =
+    AttributeKey.longKey("darco.sqlite.backup.pages_copied");
+  private static final AttributeKey<Long> PAGES_TOTAL =
+    AttributeKey.longKey("darco.sqlite.backup.pages_total");
+  private static final AttributeKey<Long> RESTARTS =
+    AttributeKey.longKey("darco.sqlite.backup.restarts");
+
+  /*
+   * The number of times a backup may be restarted before it stops pausing
+   * between steps.
+   */
+
+  private static final int RESTARTS_PAUSED = 3;
+
+  private DSBackup()
+  {
+
+  }
+
+  static void execute(
+    final DDatabaseType<? extends DSDatabaseConfigurationType, ?, ?, ?> database,
+    final Path target,
+    final DSDatabaseBackupOptions options,
+    final Consumer<DSDatabaseBackupProgress> progress)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(target, "target");
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(progress, "progress");
+
+    final var configuration = database.configuration();
+    final var telemetry = configuration.telemetry();
+    final var metrics = DSMetrics.get(telemetry);
+    final var labels = DSMetrics.locationLabels(configuration.location());
+
+    final var span =
+      telemetry.tracer()
+        .spanBuilder("DatabaseBackup")
+        .setAttribute("db.system", configuration.kind().value())
+        .startSpan();
+
+    final var pauseMillis =
+      Math.max(1L, options.stepPause().toMillis());
+    final var busyRetries =
+      (int) Math.clamp(
+        configuration.busyTimeout().toMillis() / pauseMillis,
+        1L,
+        Integer.MAX_VALUE
+      );
+
+    final var timeStart = System.nanoTime();
+    try (var ignored = span.makeCurrent();
+         var connection = database.openConnection()) {
+      final var sqlite =
+        connection.connection().unwrap(SQLiteConnection.class);
+
+      /*
+       * The connection is opened with an (empty) deferred transaction. In
+       * WAL mode, reading within it pins a snapshot that every step of the
+       * backup then reads from, so that writes made by other connections
+       * during the backup do not restart it. In other modes, a reader would
+       * block writers for the duration of the backup, and so the backup
+       * reads outside of any transaction instead.
+       */
+
+      if (isWAL(sqlite)) {
+        try (var st = sqlite.createStatement()) {
+          try (var rs = st.executeQuery("SELECT count(*) FROM sqlite_master")) {
+            rs.next();
+          }
+        }
+      } else {
+        sqlite.setAutoCommit(true);
+      }
+
+      final var observer =
+        new Observer(options, progress, span);
+
+      final var result =
+        sqlite.getDatabase()
+          .backup(
+            "main",
+            target.toAbsolutePath().toString(),
+            observer,
+            (int) Math.min(pauseMillis, Integer.MAX_VALUE),
+            busyRetries,
+            options.pagesPerStep()
+          );
+
+      metrics.backupPages().add(observer.pagesCopied, labels);
+      span.setAttribute(PAGES_COPIED, observer.pagesCopied);
+      span.setAttribute(PAGES_TOTAL, observer.pagesTotal);
+      span.setAttribute(RESTARTS, observer.restarts);
+
+      if (result != SQLiteErrorCode.SQLITE_OK.code) {
+        throw new DDatabaseException(
+          "The database backup did not complete.",
+          "error-database-backup",
+          Map.of(
+            "Target", target.toString(),
+            "Result", Integer.toString(result)
+          ),
+          Optional.empty()
+        );
+      }
+    } catch (final SQLException e) {
+      DDatabaseTelemetryType.recordSpanException(e);
+      throw DDatabaseException.ofException(e);
+    } catch (final DDatabaseException e) {
+      DDatabaseTelemetryType.recordSpanException(e);
+      throw e;
+    } finally {
+      final var timeTaken = System.nanoTime() - timeStart;
+      metrics.backupDuration()
+        .record((double) timeTaken / 1_000_000_000.0, labels);
+      span.end();
+    }
+  }
+
+  private static boolean isWAL(
+    final SQLiteConnection connection)
+    throws SQLException
+  {
+    try (var st = connection.createStatement()) {
+      try (var rs = st.executeQuery("PRAGMA journal_mode")) {
+        return rs.next() && "wal".equalsIgnoreCase(rs.getString(1));
+      }
+    }
+  }
+
+  private static final class Observer
+    implements DB.ProgressObserver
+  {
+    private final DSDatabaseBackupOptions options;
+    private final Consumer<DSDatabaseBackupProgress> progress;
+    private final Span span;
+    private long pagesCopied;
+    private long pagesTotal;
+    private long tenthPrevious;
+    private long remainingPrevious;
+    private long restarts;
+
+    Observer(
+      final DSDatabaseBackupOptions inOptions,
+      final Consumer<DSDatabaseBackupProgress> inProgress,
+      final Span inSpan)
+    {
+      this.options = inOptions;
+      this.progress = inProgress;
+      this.span = inSpan;
+      this.tenthPrevious = -1L;
+      this.remainingPrevious = -1L;
+    }
+
+    @Override
+    public void progress(
+      final int remaining,
+      final int pageCount)
+    {
+      this.pagesTotal = pageCount;
+      this.pagesCopied = (long) pageCount - (long) remaining;
+
+      /*
+       * The number of remaining pages only ever increases if the backup
+       * has been restarted.
+       */
+
+      if (this.remainingPrevious >= 0L && remaining > this.remainingPrevious) {
+        ++this.restarts;
+        this.span.addEvent("BackupRestarted");
+      }
+      this.remainingPrevious = remaining;
+
+      final var status =
+        new DSDatabaseBackupProgress(this.pagesCopied, this.pagesTotal);
+
+      /*
+       * Record a span event for every tenth of the backup completed, rather
+       * than for every step.
+       */
+
+      final var tenth = (long) Math.floor(status.fraction() * 10.0);
+      if (tenth != this.tenthPrevious) {
+        this.tenthPrevious = tenth;
+        this.span.addEvent(
+          "BackupProgress",
+          Attributes.of(
+            PAGES_COPIED, this.pagesCopied,
+            PAGES_TOTAL, this.pagesTotal
+          )
+        );
+      }
+
+      /*
+       * This is called from native code, and so exceptions raised by the
+       * receiver cannot be propagated; they are recorded instead.
+       */
+
+      try {
+        this.progress.accept(status);
+      } catch (final Exception e) {
+        this.span.recordException(e);
+      }
+
+      final var pause =
+        remaining > 0
+        && this.restarts < RESTARTS_PAUSED
+        && !this.options.stepPause().isZero();
+
+      if (pause) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(this.options.stepPause().toNanos());
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import org.sqlite.BusyHandler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A busy handler that yields and then sleeps with an exponential backoff.
+ * Instances hold per-lock-attempt state and so must not be shared between
+ * connections.
+ *
+ * <p>SQLite invokes the handler on the thread executing the statement that
+ * is waiting for the lock, and so the time at which the current wait began
+ * is also recorded per thread. This allows the caller to measure the
+ * duration of a wait once the statement completes, and to distinguish
+ * statements that waited from those that acquired their locks
+ * immediately.</p>
+ *
+ * @see DSDatabaseBusyPolicy#BACKOFF
+ */
+
+final class DSBusyHandlerBackoff extends BusyHandler
+{
+  private static final int YIELD_ATTEMPTS = 8;
+  private static final int SLEEP_SHIFT_MAXIMUM = 6;
+
+  private static final ThreadLocal<WaitState> WAIT_STATE =
+    ThreadLocal.withInitial(WaitState::new);
+
+  private final long timeoutNanos;
+  private long timeStart;
+
+  DSBusyHandlerBackoff(
+    final Duration timeout)
+  {
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  @Override
+  protected int callback(
+    final int previousInvocations)
+  {
+    final var timeNow = System.nanoTime();
+    if (previousInvocations == 0) {
+      this.timeStart = timeNow;
+      final var wait = WAIT_STATE.get();
+      if (!wait.waiting) {
+        wait.waiting = true;
+        wait.timeStart = timeNow;
+      }
+    }
+
+    final var remaining = this.timeoutNanos - (timeNow - this.timeStart);
+    if (remaining <= 0L) {
+      return 0;
+    }
+
+    if (previousInvocations < YIELD_ATTEMPTS) {
+      Thread.yield();
+      return 1;
+    }
+
+    final var shift =
+      Math.min(previousInvocations - YIELD_ATTEMPTS, SLEEP_SHIFT_MAXIMUM);
+    final var sleep =
+      Math.min(TimeUnit.MILLISECONDS.toNanos(1L << shift), remaining);
+
+    try {
+      TimeUnit.NANOSECONDS.sleep(sleep);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 0;
+    }
+    return 1;
+  }
+
+  /**
+   * Finish the current thread's wait, if any.
+   *
+   * @return The time in nanoseconds since the busy handler was first invoked
+   * on the current thread, or {@code -1} if the busy handler has not been
+   * invoked since the last call to this method
+   */
+
+  static long finishWait()
+  {
+    final var wait = WAIT_STATE.get();
+    if (!wait.waiting) {
+      return -1L;
+    }
+    wait.waiting = false;
+    return System.nanoTime() - wait.timeStart;
+  }
+
+  private static final class WaitState
+  {
+    private boolean waiting;
+    private long timeStart;
+
+    WaitState()
+    {
+
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import org.slf4j.Logger;
+import org.sqlite.SQLiteDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background WAL checkpointer. Automatic checkpoints are performed
+ * inline by whichever writer happens to push the WAL past the configured
+ * threshold; the checkpointer instead runs periodically on its own
+ * connection so that writers are not delayed.
+ *
+ * <p>On each run, a {@code PASSIVE} checkpoint is performed, which never
+ * blocks readers or writers. If no frames have been written to the WAL
+ * since the previous run, the database is considered quiet and the
+ * checkpointer escalates: a {@code TRUNCATE} checkpoint is performed to
+ * reset the WAL file to zero bytes if every frame has already been
+ * checkpointed, and a {@code RESTART} checkpoint is performed otherwise so
+ * that subsequent writers start again from the beginning of the WAL.
+ * Escalated checkpoints do not wait for readers; if readers are active,
+ * the checkpoint simply reports that it was blocked, and is retried on the
+ * next run.</p>
+ */
+
+final class DSCheckpointer implements AutoCloseable
+{
+  private static final AttributeKey<String> MODE =
+    AttributeKey.stringKey("mode");
+
+  private final Logger logger;
+  private final SQLiteDataSource dataSource;
+  private final Path walFile;
+  private final DoubleHistogram checkpointDuration;
+  private final Map<String, Attributes> checkpointLabels;
+  private final ObservableLongGauge walSizeGauge;
+  private final AtomicLong walSize;
+  private final ScheduledFuture<?> task;
+  private Connection connection;
+  private long walFramesPrevious;
+  private boolean closed;
+
+  private DSCheckpointer(
+    final Logger inLogger,
+    final Meter meter,
+    final Attributes labels,
+    final SQLiteDataSource inDataSource,
+    final Path inFile,
+    final ScheduledExecutorService executor,
+    final Duration interval)
+  {
+    this.logger =
+      Objects.requireNonNull(inLogger, "logger");
+    this.dataSource =
+      Objects.requireNonNull(inDataSource, "dataSource");
+    this.walFile =
+      inFile.resolveSibling(inFile.getFileName() + "-wal");
+    this.walFramesPrevious =
+      -1L;
+    this.walSize =
+      new AtomicLong(0L);
+    this.checkpointLabels =
+      Map.of(
+        "PASSIVE", withMode(labels, "PASSIVE"),
+        "RESTART", withMode(labels, "RESTART"),
+        "TRUNCATE", withMode(labels, "TRUNCATE")
+      );
+
+    this.checkpointDuration =
+      meter.histogramBuilder("darco.sqlite.checkpoint_duration")
+        .setDescription("The time taken to perform WAL checkpoints.")
+        .setUnit("s")
+        .build();
+
+    this.walSizeGauge =
+      meter.gaugeBuilder("darco.sqlite.wal_size")
+        .setDescription("The size of the WAL file.")
+        .setUnit("By")
+        .ofLongs()
+        .buildWithCallback(m -> m.record(this.walSize.get(), labels));
+
+    final var intervalNanos = interval.toNanos();
+    try {
+      this.task =
+        executor.scheduleWithFixedDelay(
+          this::run,
+          intervalNanos,
+          intervalNanos,
+          TimeUnit.NANOSECONDS
+        );
+    } catch (final RuntimeException e) {
+      this.walSizeGauge.close();
+      throw e;
+    }
+  }
+
+  private static Attributes withMode(
+    final Attributes labels,
+    final String mode)
+  {
+    return labels.toBuilder()
+      .put(MODE, mode)
+      .build();
+  }
+
+  /**
+   * Start a checkpointer.
+   *
+   * @param logger     The logger
+   * @param meter      The meter used to create instruments
+   * @param labels     The labels applied to measurements
+   * @param dataSource The data source used to open the checkpoint connection
+   * @param file       The database file
+   * @param executor   The executor on which checkpoints will run
+   * @param interval   The interval between checkpoints
+   *
+   * @return A running checkpointer
+   */
+
+  static DSCheckpointer start(
+    final Logger logger,
+    final Meter meter,
+    final Attributes labels,
+    final SQLiteDataSource dataSource,
+    final Path file,
+    final ScheduledExecutorService executor,
+    final Duration interval)
+  {
+    return new DSCheckpointer(
+      logger,
+      meter,
+      labels,
+      dataSource,
+      file.toAbsolutePath(),
+      executor,
+      interval
+    );
+  }
+
+  private synchronized void run()
+  {
+    if (this.closed) {
+      return;
+    }
+
+    try {
+      final var c = this.openConnection();
+      final var passive = this.checkpoint(c, "PASSIVE");
+
+      final var quiet = passive.walFrames == this.walFramesPrevious;
+      if (quiet && passive.walFrames > 0L) {
+        final var escalated =
+          passive.checkpointedFrames == passive.walFrames
+            ? this.checkpoint(c, "TRUNCATE")
+            : this.checkpoint(c, "RESTART");
+
+        if (escalated.blocked) {
+          this.logger.debug("WAL checkpoint blocked by active readers.");
+        }
+      }
+
+      this.walFramesPrevious = passive.walFrames;
+      this.walSize.set(this.walFileSize());
+    } catch (final Exception e) {
+      this.logger.error("WAL checkpoint failed: ", e);
+      this.closeConnection();
+    }
+  }
+
+  private long walFileSize()
+    throws IOException
+  {
+    try {
+      return Files.size(this.walFile);
+    } catch (final NoSuchFileException e) {
+      return 0L;
+    }
+  }
+
+  private Connection openConnection()
+    throws SQLException
+  {
+    if (this.connection == null) {
+      final var c = this.dataSource.getConnection();
+      try (var st = c.createStatement()) {
+        st.execute("PRAGMA busy_timeout = 0");
+      }
+      this.connection = c;
+    }
+    return this.connection;
+  }
+
+  private void closeConnection()
+  {
+    if (this.connection != null) {
+      try {
+        this.connection.close();
+      } catch (final SQLException e) {
+        this.logger.debug("Failed to close checkpoint connection: ", e);
+      }
+      this.connection = null;
+    }
+  }
+
+  private Result checkpoint(
+    final Connection c,
+    final String mode)
+    throws SQLException
+  {
+    final var timeStart = System.nanoTime();
+    try (var st = c.createStatement()) {
+      try (var rs = st.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+        rs.next();
+        return new Result(rs.getInt(1) != 0, rs.getLong(2), rs.getLong(3));
+      }
+    } finally {
+      final var timeTaken = System.nanoTime() - timeStart;
+      this.checkpointDuration.record(
+        (double) timeTaken / 1_000_000_000.0,
+        this.checkpointLabels.get(mode)
+      );
+    }
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    this.closed = true;
+    this.task.cancel(false);
+    this.walSizeGauge.close();
+    this.closeConnection();
+  }
+
+  private record Result(
+    boolean blocked,
+    long walFrames,
+    long checkpointedFrames)
+  {
+
+  }
+}
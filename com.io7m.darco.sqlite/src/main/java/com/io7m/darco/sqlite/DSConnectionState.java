@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.darco.sqlite;
+
+import org.sqlite.SQLiteConnection;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The state that darco associates with each SQLite connection. The state is
+ * held weakly by the connection, and so is discarded along with it.
+ *
+ * <p>The state is only accessed by the thread using the connection.</p>
+ */
+
+final class DSConnectionState
+{
+  private static final Map<SQLiteConnection, DSConnectionState> STATES =
+    Collections.synchronizedMap(new WeakHashMap<>());
+
+  private int synchronousDurable;
+  private boolean synchronousRelaxed;
+
+  private DSConnectionState()
+  {
+    this.synchronousDurable = -1;
+    this.synchronousRelaxed = false;
+  }
+
+  /**
+   * @param connection The connection
+   *
+   * @return The state associated with the given connection
+   */
+
+  static DSConnectionState of(
+    final SQLiteConnection connection)
+  {
+    return STATES.computeIfAbsent(connection, c -> new DSConnectionState());
+  }
+
+  /**
+   * @return {@code true} if {@code synchronous} is currently {@code OFF} on
+   * the connection because of a transaction with relaxed durability
+   */
+
+  boolean isSynchronousRelaxed()
+  {
+    return this.synchronousRelaxed;
+  }
+
+  /**
+   * @return The {@code synchronous} setting the connection had before it
+   * was first relaxed
+   */
+
+  int synchronousDurable()
+  {
+    return this.synchronousDurable;
+  }
+
+  /**
+   * Record that {@code synchronous} has been set to {@code OFF}.
+   *
+   * @param durable The setting that was in effect beforehand
+   */
+
+  void setSynchronousRelaxed(
+    final int durable)
+  {
+    this.synchronousDurable = durable;
+    this.synchronousRelaxed = true;
+  }
+
+  /**
+   * Record that {@code synchronous} has been restored.
+   */
+
+  void setSynchronousDurable()
+  {
+    this.synchronousRelaxed = false;
+  }
+}
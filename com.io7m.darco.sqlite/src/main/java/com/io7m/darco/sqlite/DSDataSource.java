@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import org.sqlite.BusyHandler;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteDataSource;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A data source that applies the configured profile and busy policy to
+ * every connection it opens.
+ */
+
+final class DSDataSource extends SQLiteDataSource
+{
+  private final DSDatabaseBusyPolicy busyPolicy;
+  private final Duration busyTimeout;
+  private final DSDatabaseProfile profile;
+
+  DSDataSource(
+    final SQLiteConfig config,
+    final DSDatabaseProfile inProfile,
+    final DSDatabaseBusyPolicy inBusyPolicy,
+    final Duration inBusyTimeout)
+  {
+    super(config);
+
+    this.profile =
+      Objects.requireNonNull(inProfile, "profile");
+    this.busyPolicy =
+      Objects.requireNonNull(inBusyPolicy, "busyPolicy");
+    this.busyTimeout =
+      Objects.requireNonNull(inBusyTimeout, "busyTimeout");
+  }
+
+  @Override
+  public SQLiteConnection getConnection(
+    final String username,
+    final String password)
+    throws SQLException
+  {
+    final var connection = super.getConnection(username, password);
+    try {
+      this.configure(connection);
+    } catch (final SQLException e) {
+      try {
+        connection.close();
+      } catch (final SQLException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+    return connection;
+  }
+
+  /*
+   * The driver only applies the pragmas it knows about from the SQLite
+   * configuration; wal_autocheckpoint is not one of them.
+   */
+
+  private void configure(
+    final SQLiteConnection connection)
+    throws SQLException
+  {
+    try (var st = connection.createStatement()) {
+      st.execute(
+        "PRAGMA wal_autocheckpoint = " + this.profile.walAutoCheckpoint()
+      );
+    }
+
+    switch (this.busyPolicy) {
+      case SQLITE_DEFAULT, FAIL_IMMEDIATELY -> {
+
+      }
+      case BACKOFF -> {
+        BusyHandler.setHandler(
+          connection,
+          new DSBusyHandlerBackoff(this.busyTimeout)
+        );
+      }
+    }
+  }
+}
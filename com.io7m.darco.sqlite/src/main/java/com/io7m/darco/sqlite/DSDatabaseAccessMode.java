@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+/**
+ * The mode in which the database is accessed.
+ */
+
+public enum DSDatabaseAccessMode
+{
+  /**
+   * The database is opened for reading and writing, and is created and/or
+   * upgraded as necessary.
+   */
+
+  READ_WRITE,
+
+  /**
+   * The database is opened read-only. The database must already exist, and
+   * its schema version must match the latest version exactly; the database
+   * is never created or upgraded, and no write locks are ever taken.
+   * Background maintenance tasks are disabled.
+   */
+
+  READ_ONLY,
+
+  /**
+   * The database is opened read-only as with {@link #READ_ONLY}, and is
+   * additionally declared to be immutable. SQLite performs no locking or
+   * change detection at all, and so this mode must only be used with
+   * database files (such as snapshots) that no process will modify while
+   * they are open.
+   */
+
+  READ_ONLY_IMMUTABLE
+}
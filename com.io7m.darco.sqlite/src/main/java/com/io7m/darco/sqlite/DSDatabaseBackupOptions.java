@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The options used to back up a database.
+ *
+ * @param pagesPerStep The number of pages copied in each step
+ * @param stepPause    The time to pause between steps
+ */
+
+public record DSDatabaseBackupOptions(
+  int pagesPerStep,
+  Duration stepPause)
+{
+  private static final DSDatabaseBackupOptions DEFAULTS =
+    new DSDatabaseBackupOptions(256, Duration.ofMillis(10L));
+
+  /**
+   * The options used to back up a database.
+   *
+   * @param pagesPerStep The number of pages copied in each step
+   * @param stepPause    The time to pause between steps
+   */
+
+  public DSDatabaseBackupOptions
+  {
+    Objects.requireNonNull(stepPause, "stepPause");
+
+    if (pagesPerStep < 1) {
+      throw new IllegalArgumentException(
+        "Pages per step %d must be positive".formatted(pagesPerStep)
+      );
+    }
+    if (stepPause.isNegative()) {
+      throw new IllegalArgumentException(
+        "Step pause %s must be non-negative".formatted(stepPause)
+      );
+    }
+  }
+
+  /**
+   * @return The default backup options
+   */
+
+  public static DSDatabaseBackupOptions defaults()
+  {
+    return DEFAULTS;
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+/**
+ * The progress of a database backup.
+ *
+ * @param pagesCopied The number of pages copied so far
+ * @param pagesTotal  The total number of pages in the database
+ */
+
+public record DSDatabaseBackupProgress(
+  long pagesCopied,
+  long pagesTotal)
+{
+  /**
+   * @return The progress as a value in the range {@code [0, 1]}
+   */
+
+  public double fraction()
+  {
+    if (this.pagesTotal == 0L) {
+      return 1.0;
+    }
+    return (double) this.pagesCopied / (double) this.pagesTotal;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+/**
+ * The policy applied when a connection attempts to acquire a lock that is
+ * held by another connection.
+ *
+ * @see DSDatabaseConfigurationType#busyTimeout()
+ */
+
+public enum DSDatabaseBusyPolicy
+{
+  /**
+   * Use SQLite's built-in busy handler. The connection sleeps for
+   * increasing intervals (of up to 100 milliseconds) until the lock is
+   * acquired or the busy timeout expires. The waits happen entirely inside
+   * SQLite, and so are not recorded in the
+   * {@code darco.sqlite.busy_wait} histogram.
+   */
+
+  SQLITE_DEFAULT,
+
+  /**
+   * Yield briefly on the first few attempts, and then sleep with an
+   * exponential backoff starting at one millisecond until the lock is
+   * acquired or the busy timeout expires. This typically has lower latency
+   * than {@link #SQLITE_DEFAULT} when write transactions are short. The time
+   * that each write transaction spends waiting is recorded in the
+   * {@code darco.sqlite.busy_wait} histogram.
+   */
+
+  BACKOFF,
+
+  /**
+   * Fail immediately with {@code SQLITE_BUSY} without waiting. The busy
+   * timeout is ignored.
+   */
+
+  FAIL_IMMEDIATELY
+}
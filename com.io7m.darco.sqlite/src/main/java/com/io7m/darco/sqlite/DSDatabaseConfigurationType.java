@@ -18,8 +18,12 @@
 package com.io7m.darco.sqlite;
 
 import com.io7m.darco.api.DDatabaseConfigurationType;
+import com.io7m.darco.api.DDatabaseKinds;
+import com.io7m.lanark.core.RDottedName;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
 
 /**
  * The type of database configurations specific to SQLite implementations.
@@ -28,9 +32,138 @@ import java.nio.file.Path;
 public interface DSDatabaseConfigurationType
   extends DDatabaseConfigurationType
 {
+  @Override
+  default RDottedName kind()
+  {
+    return DDatabaseKinds.sqlite();
+  }
+
   /**
    * @return The database file
+   *
+   * @see #location()
    */
 
   Path file();
+
+  /**
+   * The location of the database. By default, this is the file returned by
+   * {@link #file()}; configurations that override this method to specify
+   * another kind of location need not return a meaningful file.
+   *
+   * @return The database location
+   */
+
+  default DSDatabaseLocationType location()
+  {
+    return new DSDatabaseLocationFile(this.file());
+  }
+
+  /**
+   * @return The mode in which the database is accessed
+   */
+
+  default DSDatabaseAccessMode accessMode()
+  {
+    return DSDatabaseAccessMode.READ_WRITE;
+  }
+
+  /**
+   * The tuning profile applied to every connection. By default, this is
+   * the {@link DSDatabaseProfile#durable()} profile for read-write
+   * databases, and the {@link DSDatabaseProfile#reader()} profile for
+   * read-only databases.
+   *
+   * @return The tuning profile applied to every connection
+   */
+
+  default DSDatabaseProfile profile()
+  {
+    return switch (this.accessMode()) {
+      case READ_WRITE -> DSDatabaseProfile.durable();
+      case READ_ONLY, READ_ONLY_IMMUTABLE -> DSDatabaseProfile.reader();
+    };
+  }
+
+  /**
+   * The maximum length of time a connection will wait to acquire a lock
+   * held by another connection before failing with {@code SQLITE_BUSY}. This
+   * bounds, for example, the time spent waiting at the start of write
+   * transactions.
+   *
+   * @return The busy timeout
+   *
+   * @see com.io7m.darco.api.DDatabaseTransactionMode#WRITE
+   */
+
+  default Duration busyTimeout()
+  {
+    return this.profile().busyTimeout();
+  }
+
+  /**
+   * @return The policy applied when waiting for locks held by other connections
+   */
+
+  default DSDatabaseBusyPolicy busyPolicy()
+  {
+    return DSDatabaseBusyPolicy.SQLITE_DEFAULT;
+  }
+
+  /**
+   * The interval between background WAL checkpoints. If an interval is
+   * specified, automatic checkpoints are disabled on all connections (so
+   * that writers are never delayed by checkpoints), and the database
+   * instead checkpoints the WAL periodically on a background thread. If no
+   * interval is specified, SQLite performs automatic checkpoints according
+   * to {@link DSDatabaseProfile#walAutoCheckpoint()}. In-memory databases
+   * do not use a WAL, and so the interval is ignored for them.
+   *
+   * @return The interval between background checkpoints, if any
+   */
+
+  default Optional<Duration> checkpointInterval()
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * The interval between runs of {@code PRAGMA optimize}. If an interval is
+   * specified, the database refreshes the query planner's statistics
+   * periodically on a background thread, and once more when the database
+   * is closed.
+   *
+   * @return The interval between optimizations, if any
+   */
+
+  default Optional<Duration> optimizeInterval()
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * @return {@code true} if a full {@code ANALYZE} should be performed after
+   * the database schema has been created or upgraded
+   */
+
+  default boolean analyzeAfterUpgrade()
+  {
+    return false;
+  }
+
+  /**
+   * The incremental vacuum configuration. If a configuration is specified,
+   * newly created databases use {@code auto_vacuum=INCREMENTAL}, and the
+   * database reclaims free pages in small slices on a background thread
+   * during idle periods. Existing databases that were not created with
+   * incremental vacuuming require a full {@code VACUUM} before free pages
+   * can be reclaimed.
+   *
+   * @return The incremental vacuum configuration, if any
+   */
+
+  default Optional<DSDatabaseIncrementalVacuum> incrementalVacuum()
+  {
+    return Optional.empty();
+  }
 }
@@ -22,8 +22,11 @@ import com.io7m.darco.api.DDatabaseException;
 import com.io7m.darco.api.DDatabaseFactoryType;
 import com.io7m.darco.api.DDatabaseKinds;
 import com.io7m.darco.api.DDatabaseQueryProviderType;
+import com.io7m.darco.api.DDatabaseReadiness;
+import com.io7m.darco.api.DDatabaseSchemaSummary;
 import com.io7m.darco.api.DDatabaseTransactionType;
 import com.io7m.darco.api.DDatabaseType;
+import com.io7m.darco.api.DDatabaseUpgradeTimer;
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.jxe.core.JXEHardenedSAXParsers;
@@ -42,15 +45,26 @@ import org.sqlite.SQLiteDataSource;
 import org.sqlite.SQLiteErrorCode;
 import org.sqlite.SQLiteOpenMode;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import static com.io7m.darco.api.DDatabaseCreate.CREATE_DATABASE;
@@ -76,9 +90,24 @@ public abstract class DSDatabaseFactory<
   D extends DDatabaseType<C, N, T, Q>>
   implements DDatabaseFactoryType<C, N, T, Q, D>
 {
+  private final ConcurrentHashMap<String, BigInteger> latestVersions;
+
+  private static final int SLOWEST_STATEMENTS = 5;
+
+  /*
+   * A single factory is shared by all databases so that each setup thread
+   * receives a distinct name.
+   */
+
+  private static final ThreadFactory SETUP_THREADS =
+    Thread.ofPlatform()
+      .name("com.io7m.darco.sqlite.setup-", 0L)
+      .daemon(true)
+      .factory();
+
   protected DSDatabaseFactory()
   {
-
+    this.latestVersions = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -105,6 +134,7 @@ public abstract class DSDatabaseFactory<
    *
    * @param configuration  The database configuration
    * @param source         The datasource
+   * @param readiness      The readiness gate of the database
    * @param queryProviders The query providers
    * @param resources      The resources to be closed when the database is closed
    *
@@ -114,6 +144,7 @@ public abstract class DSDatabaseFactory<
   protected abstract D onCreateDatabase(
     C configuration,
     SQLiteDataSource source,
+    DDatabaseReadiness readiness,
     List<Q> queryProviders,
     CloseableCollectionType<DDatabaseException> resources
   );
@@ -136,6 +167,25 @@ public abstract class DSDatabaseFactory<
 
   protected abstract InputStream onRequireDatabaseSchemaXML();
 
+  /**
+   * Retrieve a precomputed summary of the schema returned by
+   * {@link #onRequireDatabaseSchemaXML()}. If the checksum of the summary
+   * matches the schema, the schema is not parsed when opening a database
+   * that is already at the latest version. A summary with a checksum that
+   * does not match the schema is ignored. Regardless of whether a summary
+   * is provided, a factory remembers the latest version of each schema it
+   * has parsed.
+   *
+   * @return The schema summary, if one is available
+   *
+   * @see DDatabaseSchemaSummary#checksumOf(byte[])
+   */
+
+  protected Optional<DDatabaseSchemaSummary> onRequireDatabaseSchemaSummary()
+  {
+    return Optional.empty();
+  }
+
   /**
    * Receive an event produced during database creation/upgrades.
    *
@@ -249,6 +299,24 @@ public abstract class DSDatabaseFactory<
     }
   }
 
+  private static int busyTimeoutMillis(
+    final Duration timeout)
+  {
+    return (int) Math.clamp(timeout.toMillis(), 0L, Integer.MAX_VALUE);
+  }
+
+  private static boolean isIncrementalVacuum(
+    final Connection connection)
+    throws SQLException
+  {
+    try (var st = connection.createStatement()) {
+      try (var rs = st.executeQuery("PRAGMA auto_vacuum")) {
+        rs.next();
+        return rs.getInt(1) == 2;
+      }
+    }
+  }
+
   private static void setWALMode(
     final Connection connection)
     throws SQLException
@@ -264,81 +332,686 @@ public abstract class DSDatabaseFactory<
     final Consumer<String> startupMessages)
     throws DDatabaseException
   {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
     final var span =
       configuration.telemetry()
         .tracer()
         .spanBuilder("DatabaseSetup")
         .startSpan();
 
+    final var resources = createCloseableResources();
     try (var ignored0 = span.makeCurrent()) {
+      try {
+        final var dataSource =
+          this.createDataSource(
+            configuration,
+            configuration.location(),
+            resources
+          );
+
+        this.setup(
+          configuration,
+          configuration.location(),
+          startupMessages,
+          dataSource
+        );
+        this.startMaintenance(configuration, dataSource, resources);
+        return this.onCreateDatabase(
+          configuration,
+          dataSource,
+          DDatabaseReadiness.ready(),
+          this.onRequireDatabaseQueryProviders(),
+          resources
+        );
+      } catch (final DDatabaseException | RuntimeException e) {
+        try {
+          resources.close();
+        } catch (final DDatabaseException ex) {
+          e.addSuppressed(ex);
+        }
+        throw e;
+      }
+    } finally {
+      span.end();
+    }
+  }
+
+  @Override
+  public final D openAsynchronously(
+    final C configuration,
+    final Consumer<String> startupMessages)
+    throws DDatabaseException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    final var resources = createCloseableResources();
+    final var readiness = DDatabaseReadiness.create();
+
+    try {
       final var dataSource =
-        this.openDataSourceInSpan(configuration, startupMessages);
+        this.createDataSource(
+          configuration,
+          configuration.location(),
+          resources
+        );
+
+      /*
+       * Maintenance tasks are started by the setup thread, and so are
+       * registered in a collection of their own that exists before the
+       * database is returned. The database waits for setup to finish
+       * before closing anything.
+       */
+
+      final var maintenance =
+        resources.add(createCloseableResources());
+      resources.add(awaitOnClose(readiness));
 
-      return this.onCreateDatabase(
+      final var database =
+        this.onCreateDatabase(
+          configuration,
+          dataSource,
+          readiness,
+          this.onRequireDatabaseQueryProviders(),
+          resources
+        );
+
+      SETUP_THREADS.newThread(() -> {
+        this.setupInBackground(
+          configuration,
+          startupMessages,
+          dataSource,
+          maintenance,
+          readiness
+        );
+      }).start();
+
+      return database;
+    } catch (final DDatabaseException | RuntimeException e) {
+      readiness.complete();
+      try {
+        resources.close();
+      } catch (final DDatabaseException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+  }
+
+  private static AutoCloseable awaitOnClose(
+    final DDatabaseReadiness readiness)
+  {
+    return () -> {
+      readiness.future()
+        .exceptionally(x -> null)
+        .join();
+    };
+  }
+
+  private void setupInBackground(
+    final C configuration,
+    final Consumer<String> startupMessages,
+    final DSDataSource dataSource,
+    final CloseableCollectionType<DDatabaseException> maintenance,
+    final DDatabaseReadiness readiness)
+  {
+    final var span =
+      configuration.telemetry()
+        .tracer()
+        .spanBuilder("DatabaseSetup")
+        .startSpan();
+
+    try (var ignored0 = span.makeCurrent()) {
+      this.setup(
         configuration,
-        dataSource,
-        this.onRequireDatabaseQueryProviders(),
-        createCloseableResources()
+        configuration.location(),
+        startupMessages,
+        dataSource
       );
+      this.startMaintenance(configuration, dataSource, maintenance);
+      readiness.complete();
+    } catch (final DDatabaseException e) {
+      this.logger().error("Database setup failed: ", e);
+      span.recordException(e);
+      readiness.fail(e);
+    } catch (final RuntimeException e) {
+      this.logger().error("Database setup failed: ", e);
+      span.recordException(e);
+      readiness.fail(DDatabaseException.ofException(e));
     } finally {
       span.end();
     }
   }
 
-  private SQLiteDataSource openDataSourceInSpan(
+  /**
+   * Open a database, first creating it as a copy of a template database if
+   * the database file does not already exist. Template files are held in
+   * the given directory, one per schema version, and are created on first
+   * use by upgrading an in-memory database and writing it out with
+   * {@code VACUUM INTO}; schema revisions are therefore executed once per
+   * schema version rather than once per database. Templates are only valid
+   * if the schema arguments and page size do not vary between databases.
+   * Only writable, file-based databases can be created from templates.
+   *
+   * @param configuration     The database configuration
+   * @param templateDirectory The directory holding template files
+   * @param startupMessages   A function that will receive startup messages
+   *
+   * @return A database
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  public final D openFromTemplate(
     final C configuration,
+    final Path templateDirectory,
     final Consumer<String> startupMessages)
     throws DDatabaseException
   {
-    final SQLiteDataSource dataSource;
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(templateDirectory, "templateDirectory");
+    Objects.requireNonNull(startupMessages, "startupMessages");
+
+    if (!(configuration.location() instanceof final DSDatabaseLocationFile f)
+        || configuration.accessMode() != DSDatabaseAccessMode.READ_WRITE) {
+      throw new DDatabaseException(
+        "Only writable file databases can be created from templates.",
+        "error-database-template-unsupported",
+        Map.of(),
+        Optional.empty()
+      );
+    }
+
+    final var span =
+      configuration.telemetry()
+        .tracer()
+        .spanBuilder("DatabaseClone")
+        .startSpan();
+
+    try (var ignored0 = span.makeCurrent()) {
+      final var file = f.file();
+      if (!Files.exists(file)) {
+        final var template =
+          this.templateFor(configuration, templateDirectory, startupMessages);
+
+        this.publishEvent(
+          startupMessages,
+          String.format("Creating database %s from template %s", file, template)
+        );
+
+        final var temporary =
+          file.resolveSibling(file.getFileName() + ".tmp-" + UUID.randomUUID());
+
+        try {
+          Files.copy(template, temporary);
+          Files.move(temporary, file);
+        } catch (final FileAlreadyExistsException e) {
+          this.logger().debug("Database {} was created concurrently", file);
+        } finally {
+          Files.deleteIfExists(temporary);
+        }
+      }
+    } catch (final DDatabaseException e) {
+      span.recordException(e);
+      throw e;
+    } catch (final Exception e) {
+      final var ex = DDatabaseException.ofException(e);
+      span.recordException(ex);
+      throw ex;
+    } finally {
+      span.end();
+    }
+
+    return this.open(configuration, startupMessages);
+  }
+
+  private Path templateFor(
+    final C configuration,
+    final Path directory,
+    final Consumer<String> startupMessages)
+    throws Exception
+  {
+    final var version =
+      this.schemaLatest(configuration);
+    final var template =
+      directory.resolve("darco_template_%s.db".formatted(version));
+
+    if (Files.isRegularFile(template)) {
+      return template;
+    }
+
+    this.publishEvent(
+      startupMessages,
+      String.format("Creating template database %s", template)
+    );
+
+    Files.createDirectories(directory);
+
+    final var temporary =
+      directory.resolve(
+        "darco_template_%s.db.tmp-%s".formatted(version, UUID.randomUUID())
+      );
+
     try {
-      final var url = new StringBuilder(128);
-      url.append("jdbc:sqlite:");
-      url.append(configuration.file().toAbsolutePath());
+      final var location =
+        new DSDatabaseLocationMemory("darco_template_" + UUID.randomUUID());
+
+      try (var resources = createCloseableResources()) {
+        final var dataSource =
+          this.createDataSource(
+            configuration,
+            location,
+            resources
+          );
+
+        this.setup(configuration, location, startupMessages, dataSource);
+
+        try (var connection = dataSource.getConnection()) {
+          try (var st = connection.prepareStatement("VACUUM INTO ?")) {
+            st.setString(1, temporary.toAbsolutePath().toString());
+            st.execute();
+          }
+        }
+      }
+
+      Files.move(
+        temporary,
+        template,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    return template;
+  }
+
+  private static String jdbcURL(
+    final DSDatabaseLocationType location,
+    final DSDatabaseAccessMode accessMode)
+  {
+    if (accessMode == DSDatabaseAccessMode.READ_ONLY_IMMUTABLE
+        && location instanceof final DSDatabaseLocationFile f) {
+      return "jdbc:sqlite:%s?immutable=1"
+        .formatted(f.file().toAbsolutePath().toUri());
+    }
+    return location.jdbcURL();
+  }
+
+  private static Optional<DSDatabaseIncrementalVacuum> incrementalVacuumOf(
+    final DSDatabaseConfigurationType configuration)
+  {
+    if (configuration.accessMode() != DSDatabaseAccessMode.READ_WRITE) {
+      return Optional.empty();
+    }
+
+    return switch (configuration.location()) {
+      case final DSDatabaseLocationFile ignored ->
+        configuration.incrementalVacuum();
+      case final DSDatabaseLocationMemory ignored ->
+        Optional.empty();
+    };
+  }
+
+  private static Optional<Duration> checkpointIntervalOf(
+    final DSDatabaseConfigurationType configuration)
+  {
+    if (configuration.accessMode() != DSDatabaseAccessMode.READ_WRITE) {
+      return Optional.empty();
+    }
+
+    return switch (configuration.location()) {
+      case final DSDatabaseLocationFile ignored ->
+        configuration.checkpointInterval();
+      case final DSDatabaseLocationMemory ignored ->
+        Optional.empty();
+    };
+  }
+
+  private void startMaintenance(
+    final C configuration,
+    final DSDataSource dataSource,
+    final CloseableCollectionType<DDatabaseException> resources)
+  {
+    final var checkpointInterval = checkpointIntervalOf(configuration);
+    final var optimizeInterval =
+      switch (configuration.accessMode()) {
+        case READ_WRITE -> configuration.optimizeInterval();
+        case READ_ONLY, READ_ONLY_IMMUTABLE -> Optional.<Duration>empty();
+      };
+    final var vacuum = incrementalVacuumOf(configuration);
+
+    if (checkpointInterval.isEmpty()
+        && optimizeInterval.isEmpty()
+        && vacuum.isEmpty()) {
+      return;
+    }
+
+    final var executor =
+      resources.add(
+        Executors.newSingleThreadScheduledExecutor(
+          Thread.ofPlatform()
+            .name("com.io7m.darco.sqlite.maintenance-", 0L)
+            .daemon(true)
+            .factory()
+        )
+      );
+
+    final var meter = configuration.telemetry().meter();
+    final var labels = DSMetrics.locationLabels(configuration.location());
+    if (checkpointInterval.isPresent()
+        && configuration.location() instanceof final DSDatabaseLocationFile f) {
+      resources.add(
+        DSCheckpointer.start(
+          this.logger(),
+          meter,
+          labels,
+          dataSource,
+          f.file(),
+          executor,
+          checkpointInterval.get()
+        )
+      );
+    }
+
+    if (vacuum.isPresent()
+        && configuration.location() instanceof final DSDatabaseLocationFile f) {
+      resources.add(
+        DSIncrementalVacuumer.start(
+          this.logger(),
+          meter,
+          labels,
+          dataSource,
+          f.file(),
+          executor,
+          vacuum.get()
+        )
+      );
+    }
+
+    optimizeInterval.ifPresent(interval -> {
+      resources.add(
+        DSOptimizer.start(
+          this.logger(),
+          meter,
+          labels,
+          dataSource,
+          executor,
+          interval
+        )
+      );
+    });
+  }
+
+  private DSDataSource createDataSource(
+    final C configuration,
+    final DSDatabaseLocationType location,
+    final CloseableCollectionType<DDatabaseException> resources)
+    throws DDatabaseException
+  {
+    final DSDataSource dataSource;
+    try {
+      final var accessMode = configuration.accessMode();
 
       final var config = new SQLiteConfig();
       config.enforceForeignKeys(true);
 
-      if (configuration.create() == CREATE_DATABASE) {
-        config.setOpenMode(SQLiteOpenMode.CREATE);
-      } else {
-        config.resetOpenMode(SQLiteOpenMode.CREATE);
+      switch (accessMode) {
+        case READ_WRITE -> {
+          if (configuration.create() == CREATE_DATABASE) {
+            config.setOpenMode(SQLiteOpenMode.CREATE);
+          } else {
+            config.resetOpenMode(SQLiteOpenMode.CREATE);
+          }
+        }
+        case READ_ONLY, READ_ONLY_IMMUTABLE -> {
+          if (location instanceof DSDatabaseLocationMemory) {
+            throw new DDatabaseException(
+              "In-memory databases cannot be opened read-only.",
+              "error-database-read-only",
+              Map.of(),
+              Optional.empty()
+            );
+          }
+          config.setReadOnly(true);
+        }
       }
 
+      final var profile =
+        checkpointIntervalOf(configuration).isPresent()
+          ? configuration.profile().withWalAutoCheckpoint(0)
+          : configuration.profile();
+
+      config.setSynchronous(profile.synchronous());
+      config.setCacheSize(
+        (int) -Math.min(profile.cacheSizeBytes() / 1024L, Integer.MAX_VALUE)
+      );
+      config.setPragma(
+        SQLiteConfig.Pragma.MMAP_SIZE,
+        Long.toString(profile.mmapSizeBytes())
+      );
+      config.setTempStore(profile.tempStore());
+      config.setPageSize(profile.pageSizeBytes());
+
+      final var busyPolicy = configuration.busyPolicy();
+      final var busyTimeout = configuration.busyTimeout();
+      config.setBusyTimeout(
+        switch (busyPolicy) {
+          case SQLITE_DEFAULT, BACKOFF -> busyTimeoutMillis(busyTimeout);
+          case FAIL_IMMEDIATELY -> 0;
+        }
+      );
+
       this.onAdjustSQLiteConfig(config);
 
-      dataSource = new SQLiteDataSource(config);
-      dataSource.setUrl(url.toString());
+      dataSource =
+        new DSDataSource(config, profile, busyPolicy, busyTimeout);
+      dataSource.setUrl(jdbcURL(location, accessMode));
 
-      final var parsers = new TrSchemaRevisionSetParsers();
-      final TrSchemaRevisionSet revisions;
-      try (var stream = this.onRequireDatabaseSchemaXML()) {
-        final var parser =
-          parsers.createParserWithContext(
-            configuration.saxParsers()
-              .orElseGet(JXEHardenedSAXParsers::new),
-            URI.create("urn:source"),
-            stream,
-            parseStatus -> {
-
-            }
-          );
-        revisions = parser.execute();
+      /*
+       * An in-memory database is discarded when its last connection is
+       * closed, so a connection is held open for the lifetime of the
+       * database.
+       */
+
+      if (location instanceof DSDatabaseLocationMemory) {
+        resources.add(dataSource.getConnection());
       }
+    } catch (final DDatabaseException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw DDatabaseException.ofException(e);
+    }
+
+    return dataSource;
+  }
 
-      final var arguments =
-        this.onRequireDatabaseSchemaArguments(configuration);
+  private void setup(
+    final C configuration,
+    final DSDatabaseLocationType location,
+    final Consumer<String> startupMessages,
+    final DSDataSource dataSource)
+    throws DDatabaseException
+  {
+    try {
+      final byte[] schema;
+      try (var stream = this.onRequireDatabaseSchemaXML()) {
+        schema = stream.readAllBytes();
+      }
 
       try (var connection = dataSource.getConnection()) {
-        setWALMode(connection);
-        connection.setAutoCommit(false);
+        switch (configuration.accessMode()) {
+          case READ_WRITE -> {
+            this.schemaUpgrade(
+              configuration,
+              location,
+              startupMessages,
+              schema,
+              connection
+            );
+          }
+          case READ_ONLY, READ_ONLY_IMMUTABLE -> {
+            this.schemaVerify(
+              configuration,
+              startupMessages,
+              schema,
+              connection
+            );
+          }
+        }
+      }
+    } catch (final Exception e) {
+      throw DDatabaseException.ofException(e);
+    }
+  }
+
+  /*
+   * The latest schema version is known without parsing the schema if the
+   * factory has already parsed an identical schema, or if the application
+   * supplied a summary that matches the schema.
+   */
+
+  private Optional<BigInteger> schemaLatestKnown(
+    final String checksum)
+  {
+    final var remembered = this.latestVersions.get(checksum);
+    if (remembered != null) {
+      return Optional.of(remembered);
+    }
+
+    final var summary = this.onRequireDatabaseSchemaSummary();
+    if (summary.isPresent()) {
+      if (Objects.equals(summary.get().checksum(), checksum)) {
+        return Optional.of(summary.get().latestVersion());
+      }
+      this.logger().warn(
+        "Ignoring schema summary with checksum {} (schema checksum is {})",
+        summary.get().checksum(),
+        checksum
+      );
+    }
+    return Optional.empty();
+  }
+
+  private BigInteger schemaLatest(
+    final C configuration)
+    throws Exception
+  {
+    final byte[] schema;
+    try (var stream = this.onRequireDatabaseSchemaXML()) {
+      schema = stream.readAllBytes();
+    }
+
+    final var checksum = DDatabaseSchemaSummary.checksumOf(schema);
+    final var known = this.schemaLatestKnown(checksum);
+    if (known.isPresent()) {
+      return known.get();
+    }
+    return this.schemaParse(configuration, schema, checksum)
+      .revisions()
+      .lastKey();
+  }
+
+  private TrSchemaRevisionSet schemaParse(
+    final C configuration,
+    final byte[] schema,
+    final String checksum)
+    throws Exception
+  {
+    final var parsers = new TrSchemaRevisionSetParsers();
+    final TrSchemaRevisionSet revisions;
+    try (var stream = new ByteArrayInputStream(schema)) {
+      final var parser =
+        parsers.createParserWithContext(
+          configuration.saxParsers()
+            .orElseGet(JXEHardenedSAXParsers::new),
+          URI.create("urn:source"),
+          stream,
+          parseStatus -> {
+
+          }
+        );
+      revisions = parser.execute();
+    }
+
+    this.latestVersions.put(checksum, revisions.revisions().lastKey());
+    return revisions;
+  }
+
+  private void schemaUpgrade(
+    final C configuration,
+    final DSDatabaseLocationType location,
+    final Consumer<String> startupMessages,
+    final byte[] schema,
+    final Connection connection)
+    throws Exception
+  {
+    final var arguments =
+      this.onRequireDatabaseSchemaArguments(configuration);
+
+    /*
+     * The auto_vacuum setting only takes effect if it is set before any
+     * tables are created, and so must precede everything else.
+     */
+
+    final var vacuum = incrementalVacuumOf(configuration);
+    if (vacuum.isPresent()) {
+      try (var st = connection.createStatement()) {
+        st.execute("PRAGMA auto_vacuum = INCREMENTAL");
+      }
+    }
+
+    if (location instanceof DSDatabaseLocationFile) {
+      setWALMode(connection);
+    }
+    connection.setAutoCommit(false);
+
+    /*
+     * If the database is already at the latest known version, there is
+     * nothing for the executor to do, and so neither it nor the schema
+     * parser need to run.
+     */
+
+    final var checksum = DDatabaseSchemaSummary.checksumOf(schema);
+    final var latest = this.schemaLatestKnown(checksum);
+    final var upgraded = new AtomicBoolean(false);
+
+    if (latest.isPresent()
+        && Objects.equals(this.schemaVersionGet(connection), latest)) {
+      this.publishEvent(
+        startupMessages,
+        String.format("Database is already at version %s", latest.get())
+      );
+    } else {
+      final var timer = new DDatabaseUpgradeTimer(configuration.telemetry());
+      try (timer) {
+
+        /*
+         * The schema executor reports when each statement starts, but not
+         * when it finishes. The statement is ended before the schema
+         * version is read or written so that the time taken to do so is not
+         * attributed to the last statement of each revision.
+         */
 
         new TrExecutors().create(
           new TrExecutorConfiguration(
-            this::schemaVersionGet,
-            this::schemaVersionSet,
-            event -> this.publishTrEvent(startupMessages, event),
-            revisions,
+            c -> {
+              timer.executed();
+              return this.schemaVersionGet(c);
+            },
+            (v, c) -> {
+              timer.executed();
+              this.schemaVersionSet(v, c);
+            },
+            event -> {
+              if (event instanceof TrEventUpgrading) {
+                upgraded.set(true);
+              }
+              this.publishTrEvent(startupMessages, timer, event);
+            },
+            this.schemaParse(configuration, schema, checksum),
             switch (configuration.upgrade()) {
               case UPGRADE_DATABASE -> PERFORM_UPGRADES;
               case DO_NOT_UPGRADE_DATABASE -> FAIL_INSTEAD_OF_UPGRADING;
@@ -347,14 +1020,72 @@ public abstract class DSDatabaseFactory<
             connection
           )
         ).execute();
+      }
+      this.publishSlowestStatements(startupMessages, timer);
+    }
+
+    if (vacuum.isPresent() && !isIncrementalVacuum(connection)) {
+      this.publishEvent(
+        startupMessages,
+        "The database was not created with auto_vacuum=INCREMENTAL; a full VACUUM is required before free pages can be reclaimed."
+      );
+    }
 
-        connection.commit();
+    if (upgraded.get() && configuration.analyzeAfterUpgrade()) {
+      this.publishEvent(startupMessages, "Analyzing database");
+      try (var st = connection.createStatement()) {
+        st.execute("ANALYZE");
       }
-    } catch (final Exception e) {
-      throw DDatabaseException.ofException(e);
     }
 
-    return dataSource;
+    connection.commit();
+  }
+
+  /*
+   * A read-only database cannot be created or upgraded, so the schema
+   * version is simply checked against the latest revision. Nothing is
+   * written, and so no write locks are taken.
+   */
+
+  private void schemaVerify(
+    final C configuration,
+    final Consumer<String> startupMessages,
+    final byte[] schema,
+    final Connection connection)
+    throws Exception
+  {
+    connection.setAutoCommit(false);
+
+    final var checksum = DDatabaseSchemaSummary.checksumOf(schema);
+    final var latest = this.schemaLatestKnown(checksum);
+    final BigInteger expected;
+    if (latest.isPresent()) {
+      expected = latest.get();
+    } else {
+      expected = this.schemaParse(configuration, schema, checksum)
+        .revisions()
+        .lastKey();
+    }
+
+    final var found = this.schemaVersionGet(connection);
+    connection.rollback();
+
+    if (!Objects.equals(found, Optional.of(expected))) {
+      throw new DDatabaseException(
+        "The database schema version does not match the expected version.",
+        "error-database-schema-version",
+        Map.of(
+          "Expected", expected.toString(),
+          "Found", found.map(BigInteger::toString).orElse("None")
+        ),
+        Optional.empty()
+      );
+    }
+
+    this.publishEvent(
+      startupMessages,
+      String.format("Opened read-only database at version %s", expected)
+    );
   }
 
   private void publishEvent(
@@ -377,11 +1108,35 @@ public abstract class DSDatabaseFactory<
     }
   }
 
+  private void publishSlowestStatements(
+    final Consumer<String> startupMessages,
+    final DDatabaseUpgradeTimer timer)
+  {
+    final var slowest = timer.slowest(SLOWEST_STATEMENTS);
+    if (slowest.isEmpty()) {
+      return;
+    }
+
+    this.publishEvent(startupMessages, "Slowest upgrade statements:");
+    for (final var timing : slowest) {
+      this.publishEvent(
+        startupMessages,
+        String.format(
+          "  %s (version %s): %s",
+          timing.duration(),
+          timing.version(),
+          timing.statementSummary())
+      );
+    }
+  }
+
   private void publishTrEvent(
     final Consumer<String> startupMessages,
+    final DDatabaseUpgradeTimer timer,
     final TrEventType event)
   {
     if (event instanceof final TrEventExecutingSQL sql) {
+      timer.executing(sql.statement());
       this.publishEvent(
         startupMessages,
         String.format("Executing SQL: %s", sql.statement())
@@ -390,6 +1145,7 @@ public abstract class DSDatabaseFactory<
     }
 
     if (event instanceof final TrEventUpgrading upgrading) {
+      timer.upgrading(upgrading.toVersion());
       this.publishEvent(
         startupMessages,
         String.format(
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The configuration of incremental vacuuming.
+ *
+ * @param interval      The interval between checks for idle periods
+ * @param pagesPerSlice The maximum number of free pages reclaimed in each
+ *                      slice
+ */
+
+public record DSDatabaseIncrementalVacuum(
+  Duration interval,
+  int pagesPerSlice)
+{
+  /**
+   * The configuration of incremental vacuuming.
+   *
+   * @param interval      The interval between checks for idle periods
+   * @param pagesPerSlice The maximum number of free pages reclaimed in each
+   *                      slice
+   */
+
+  public DSDatabaseIncrementalVacuum
+  {
+    Objects.requireNonNull(interval, "interval");
+
+    if (pagesPerSlice < 1) {
+      throw new IllegalArgumentException(
+        "Pages per slice %d must be positive".formatted(pagesPerSlice)
+      );
+    }
+  }
+}
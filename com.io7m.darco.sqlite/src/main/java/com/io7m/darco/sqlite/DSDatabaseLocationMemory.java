@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A named database held in memory. All connections opened by the database
+ * share the same data using SQLite's shared cache, and the data is
+ * discarded when the database is closed. Within the same process, two
+ * databases opened with the same name share the same data.
+ *
+ * <p>Shared-cache connections use table-level locking, and concurrent
+ * writers may fail with {@code SQLITE_LOCKED} rather than waiting for the
+ * busy timeout.</p>
+ *
+ * @param name The database name
+ */
+
+public record DSDatabaseLocationMemory(
+  String name)
+  implements DSDatabaseLocationType
+{
+  private static final Pattern VALID_NAME =
+    Pattern.compile("[A-Za-z0-9_.\\-]+");
+
+  /**
+   * A named database held in memory.
+   *
+   * @param name The database name
+   */
+
+  public DSDatabaseLocationMemory
+  {
+    Objects.requireNonNull(name, "name");
+
+    if (!VALID_NAME.matcher(name).matches()) {
+      throw new IllegalArgumentException(
+        "Database name '%s' must match %s".formatted(name, VALID_NAME)
+      );
+    }
+  }
+
+  @Override
+  public String jdbcURL()
+  {
+    return "jdbc:sqlite:file:%s?mode=memory&cache=shared".formatted(this.name);
+  }
+}
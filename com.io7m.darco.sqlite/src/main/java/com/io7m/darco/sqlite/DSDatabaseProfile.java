@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import org.sqlite.SQLiteConfig.SynchronousMode;
+import org.sqlite.SQLiteConfig.TempStore;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A set of SQLite tuning parameters applied to every connection opened by
+ * a database. The {@link #durable()}, {@link #balanced()}, and
+ * {@link #throughput()} profiles cover the common tradeoffs between
+ * durability and performance, and the {@link #reader()} profile is suited
+ * to read-only databases.
+ *
+ * @param synchronous       The {@code synchronous} setting
+ * @param cacheSizeBytes    The size of the page cache of each connection
+ * @param mmapSizeBytes     The maximum number of bytes of the database file
+ *                          that will be accessed using memory-mapped I/O
+ * @param tempStore         The location of temporary tables and indices
+ * @param walAutoCheckpoint The number of WAL pages after which a checkpoint
+ *                          is performed automatically (or {@code 0} to
+ *                          disable automatic checkpoints)
+ * @param busyTimeout       The default busy timeout
+ * @param pageSizeBytes     The page size; this only takes effect when the
+ *                          database is created
+ *
+ * @see DSDatabaseConfigurationType#busyTimeout()
+ */
+
+public record DSDatabaseProfile(
+  SynchronousMode synchronous,
+  long cacheSizeBytes,
+  long mmapSizeBytes,
+  TempStore tempStore,
+  int walAutoCheckpoint,
+  Duration busyTimeout,
+  int pageSizeBytes)
+{
+  private static final DSDatabaseProfile DURABLE =
+    new DSDatabaseProfile(
+      SynchronousMode.FULL,
+      2L * 1024L * 1024L,
+      0L,
+      TempStore.DEFAULT,
+      1000,
+      Duration.ofSeconds(3L),
+      4096
+    );
+
+  private static final DSDatabaseProfile BALANCED =
+    new DSDatabaseProfile(
+      SynchronousMode.NORMAL,
+      16L * 1024L * 1024L,
+      64L * 1024L * 1024L,
+      TempStore.MEMORY,
+      1000,
+      Duration.ofSeconds(5L),
+      4096
+    );
+
+  private static final DSDatabaseProfile THROUGHPUT =
+    new DSDatabaseProfile(
+      SynchronousMode.OFF,
+      64L * 1024L * 1024L,
+      256L * 1024L * 1024L,
+      TempStore.MEMORY,
+      10000,
+      Duration.ofSeconds(10L),
+      8192
+    );
+
+  private static final DSDatabaseProfile READER =
+    new DSDatabaseProfile(
+      SynchronousMode.NORMAL,
+      64L * 1024L * 1024L,
+      1024L * 1024L * 1024L,
+      TempStore.MEMORY,
+      1000,
+      Duration.ofSeconds(5L),
+      4096
+    );
+
+  /**
+   * A set of SQLite tuning parameters applied to every connection opened by
+   * a database.
+   *
+   * @param synchronous       The {@code synchronous} setting
+   * @param cacheSizeBytes    The size of the page cache of each connection
+   * @param mmapSizeBytes     The maximum number of bytes of the database file
+   *                          that will be accessed using memory-mapped I/O
+   * @param tempStore         The location of temporary tables and indices
+   * @param walAutoCheckpoint The number of WAL pages after which a checkpoint
+   *                          is performed automatically (or {@code 0} to
+   *                          disable automatic checkpoints)
+   * @param busyTimeout       The default busy timeout
+   * @param pageSizeBytes     The page size; this only takes effect when the
+   *                          database is created
+   */
+
+  public DSDatabaseProfile
+  {
+    Objects.requireNonNull(synchronous, "synchronous");
+    Objects.requireNonNull(tempStore, "tempStore");
+    Objects.requireNonNull(busyTimeout, "busyTimeout");
+
+    if (cacheSizeBytes < 1024L) {
+      throw new IllegalArgumentException(
+        "Cache size %d must be at least 1024".formatted(cacheSizeBytes)
+      );
+    }
+    if (mmapSizeBytes < 0L) {
+      throw new IllegalArgumentException(
+        "Memory map size %d must be non-negative".formatted(mmapSizeBytes)
+      );
+    }
+    if (walAutoCheckpoint < 0) {
+      throw new IllegalArgumentException(
+        "WAL autocheckpoint %d must be non-negative"
+          .formatted(walAutoCheckpoint)
+      );
+    }
+
+    final var pageSizeValid =
+      pageSizeBytes >= 512
+      && pageSizeBytes <= 65536
+      && Integer.bitCount(pageSizeBytes) == 1;
+
+    if (!pageSizeValid) {
+      throw new IllegalArgumentException(
+        "Page size %d must be a power of two in the range [512, 65536]"
+          .formatted(pageSizeBytes)
+      );
+    }
+  }
+
+  /**
+   * The durable profile corresponds to SQLite's own defaults: every commit
+   * is synced to disk, and the page cache is small.
+   *
+   * @return The durable profile
+   */
+
+  public static DSDatabaseProfile durable()
+  {
+    return DURABLE;
+  }
+
+  /**
+   * The balanced profile uses {@code synchronous=NORMAL}: in WAL mode, the
+   * database cannot be corrupted by a crash, but the most recently committed
+   * transactions may be lost on power failure. It uses a larger page cache,
+   * memory-mapped I/O, and in-memory temporary storage.
+   *
+   * @return The balanced profile
+   */
+
+  public static DSDatabaseProfile balanced()
+  {
+    return BALANCED;
+  }
+
+  /**
+   * The throughput profile uses {@code synchronous=OFF}, large caches, and
+   * less frequent checkpoints. An operating system crash or power failure
+   * may corrupt the database, and so this profile is only suitable for
+   * data that can be recreated.
+   *
+   * @return The throughput profile
+   */
+
+  public static DSDatabaseProfile throughput()
+  {
+    return THROUGHPUT;
+  }
+
+  /**
+   * The reader profile is intended for databases opened read-only. It uses
+   * a large page cache, and maps up to a gigabyte of the database file into
+   * memory so that reads avoid copying pages through the cache.
+   *
+   * @return The reader profile
+   *
+   * @see DSDatabaseAccessMode
+   */
+
+  public static DSDatabaseProfile reader()
+  {
+    return READER;
+  }
+
+  /**
+   * @param newBusyTimeout The busy timeout
+   *
+   * @return This profile with the given busy timeout
+   */
+
+  public DSDatabaseProfile withBusyTimeout(
+    final Duration newBusyTimeout)
+  {
+    return new DSDatabaseProfile(
+      this.synchronous,
+      this.cacheSizeBytes,
+      this.mmapSizeBytes,
+      this.tempStore,
+      this.walAutoCheckpoint,
+      newBusyTimeout,
+      this.pageSizeBytes
+    );
+  }
+
+  /**
+   * @param newWalAutoCheckpoint The WAL autocheckpoint threshold
+   *
+   * @return This profile with the given WAL autocheckpoint threshold
+   */
+
+  public DSDatabaseProfile withWalAutoCheckpoint(
+    final int newWalAutoCheckpoint)
+  {
+    return new DSDatabaseProfile(
+      this.synchronous,
+      this.cacheSizeBytes,
+      this.mmapSizeBytes,
+      this.tempStore,
+      newWalAutoCheckpoint,
+      this.busyTimeout,
+      this.pageSizeBytes
+    );
+  }
+}
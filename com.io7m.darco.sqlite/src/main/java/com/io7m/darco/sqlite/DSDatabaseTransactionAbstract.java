@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.darco.sqlite;
+
+import com.io7m.darco.api.DDatabaseConnectionType;
+import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseQueryProviderType;
+import com.io7m.darco.api.DDatabaseTransactionAbstract;
+import com.io7m.darco.api.DDatabaseTransactionCloseBehavior;
+import com.io7m.darco.api.DDatabaseTransactionOptions;
+import com.io7m.darco.api.DDatabaseTransactionType;
+import io.opentelemetry.api.trace.Span;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.io7m.darco.api.DDatabaseDurability.RELAXED;
+import static com.io7m.darco.api.DDatabaseTransactionMode.WRITE;
+
+/**
+ * An abstract implementation of the transaction type for SQLite databases.
+ *
+ * <p>SQLite transactions are always serializable, and so the isolation
+ * level is ignored. Write transactions are begun by the driver in
+ * {@code IMMEDIATE} mode so that the write lock is acquired up front
+ * (waiting according to the connection's busy handler) rather than failing
+ * with {@code SQLITE_BUSY} on a later lock upgrade. Transactions with
+ * relaxed durability set {@code PRAGMA synchronous} to {@code OFF} on the
+ * connection; the previous setting is restored when a transaction with the
+ * default durability next begins on the same connection. Cancelling the
+ * transaction interrupts the connection with
+ * {@code sqlite3_interrupt()}.</p>
+ *
+ * @param <C> The type of database configuration
+ * @param <T> The type of database transactions
+ * @param <N> The type of database connections
+ * @param <Q> The precise type of database query providers
+ */
+
+public abstract class DSDatabaseTransactionAbstract<
+  C extends DSDatabaseConfigurationType,
+  N extends DDatabaseConnectionType<T>,
+  T extends DDatabaseTransactionType,
+  Q extends DDatabaseQueryProviderType<T, ?, ?, ?>>
+  extends DDatabaseTransactionAbstract<C, N, T, Q>
+{
+  private static final int SQLITE_BUSY = 5;
+
+  private final C configuration;
+  private final N connection;
+
+  protected DSDatabaseTransactionAbstract(
+    final DDatabaseTransactionCloseBehavior inCloseBehavior,
+    final C inConfiguration,
+    final N inConnection,
+    final Span inTransactionScope,
+    final Map<Class<?>, Q> inQueries)
+  {
+    super(
+      inCloseBehavior,
+      inConfiguration,
+      inConnection,
+      inTransactionScope,
+      inQueries
+    );
+    this.configuration = inConfiguration;
+    this.connection = inConnection;
+  }
+
+  @Override
+  protected final void onCancel(
+    final Connection c)
+    throws SQLException
+  {
+    c.unwrap(SQLiteConnection.class).getDatabase().interrupt();
+  }
+
+  /*
+   * The driver does not implement Connection.abort(), but closing the
+   * connection from another thread is safe once the running statement (if
+   * any) has been interrupted; the driver serializes access to the
+   * underlying database handle.
+   */
+
+  @Override
+  protected final void onAbort(
+    final Connection c)
+    throws SQLException
+  {
+    c.close();
+  }
+
+  @Override
+  protected final boolean isBeginRequiredForDefaults()
+    throws SQLException
+  {
+    final var sqlite =
+      this.connection.connection().unwrap(SQLiteConnection.class);
+    return DSConnectionState.of(sqlite).isSynchronousRelaxed();
+  }
+
+  /*
+   * SQLite does not allow the synchronous setting to be changed inside a
+   * transaction, and the JDBC driver begins a new deferred (and so
+   * lock-free) transaction as soon as auto-commit is disabled and after
+   * every commit or rollback. The setting belongs to the connection, and so
+   * the connection remembers whether it has been relaxed; the setting is
+   * only changed when a transaction requires a different durability to the
+   * previous transaction on the same connection. When the setting does not
+   * need to change and the transaction is not a write transaction, the
+   * transaction the driver has already begun is used as it is.
+   */
+
+  @Override
+  protected final void onBegin(
+    final DDatabaseTransactionOptions transactionOptions)
+    throws SQLException, DDatabaseException
+  {
+    final var c =
+      this.connection();
+    final var sqlite =
+      c.unwrap(SQLiteConnection.class);
+    final var state =
+      DSConnectionState.of(sqlite);
+
+    final var relaxed =
+      transactionOptions.durability() == RELAXED;
+    final var changeSynchronous =
+      relaxed != state.isSynchronousRelaxed();
+    final var write =
+      transactionOptions.mode() == WRITE;
+
+    if (!changeSynchronous && !write) {
+      return;
+    }
+
+    this.recordRoundTrip();
+    c.setAutoCommit(true);
+
+    try {
+      if (changeSynchronous) {
+        this.changeSynchronous(c, state, relaxed);
+      }
+    } finally {
+      this.recordRoundTrip();
+      if (write) {
+        this.beginImmediate(sqlite);
+      } else {
+        c.setAutoCommit(false);
+      }
+    }
+  }
+
+  private void changeSynchronous(
+    final Connection c,
+    final DSConnectionState state,
+    final boolean relaxed)
+    throws SQLException
+  {
+    try (var st = c.createStatement()) {
+      if (relaxed) {
+        final int previous;
+        this.recordRoundTrip();
+        try (var rs = st.executeQuery("PRAGMA synchronous")) {
+          rs.next();
+          previous = rs.getInt(1);
+        }
+        this.recordRoundTrip();
+        st.execute("PRAGMA synchronous = 0");
+        state.setSynchronousRelaxed(previous);
+      } else {
+        this.recordRoundTrip();
+        st.execute("PRAGMA synchronous = " + state.synchronousDurable());
+        state.setSynchronousDurable();
+      }
+    }
+  }
+
+  /*
+   * Write transactions are begun by the driver in IMMEDIATE mode. The
+   * driver's previous mode is restored as soon as the transaction has begun,
+   * so that the transaction the driver begins after the next commit or
+   * rollback does not hold the write lock while the connection is idle.
+   */
+
+  private void beginImmediate(
+    final SQLiteConnection sqlite)
+    throws SQLException, DDatabaseException
+  {
+    final var config =
+      sqlite.getConnectionConfig();
+    final var modePrevious =
+      config.getTransactionMode();
+
+    DSBusyHandlerBackoff.finishWait();
+    config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+    try {
+      sqlite.setAutoCommit(false);
+    } catch (final SQLException e) {
+
+      /*
+       * The driver disables auto-commit before beginning the transaction,
+       * and so expects a transaction to be open on the connection. It will
+       * fail to roll back on close if there isn't one.
+       */
+
+      try (var st = sqlite.createStatement()) {
+        st.execute("BEGIN");
+      }
+      if ((e.getErrorCode() & 0xff) == SQLITE_BUSY) {
+        throw new DDatabaseException(
+          "Timed out waiting for the database write lock.",
+          e,
+          "error-database-busy",
+          Map.of(),
+          Optional.empty()
+        );
+      }
+      throw e;
+    } finally {
+      config.setTransactionMode(modePrevious);
+      this.recordBusyWait();
+    }
+  }
+
+  /*
+   * Only the BACKOFF busy policy can observe how long it waited: the
+   * built-in busy handler waits entirely inside SQLite. Nothing is recorded
+   * under the other policies, or if the lock was acquired without waiting.
+   */
+
+  private void recordBusyWait()
+  {
+    final var timeWaited = DSBusyHandlerBackoff.finishWait();
+    if (timeWaited >= 0L) {
+      DSMetrics.get(this.configuration.telemetry())
+        .busyWait()
+        .record(
+          (double) timeWaited / 1_000_000_000.0,
+          DSMetrics.locationLabels(this.configuration.location())
+        );
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import com.io7m.darco.api.DDatabaseConnectionType;
+import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseQueryProviderType;
+import com.io7m.darco.api.DDatabaseTransactionType;
+import com.io7m.darco.api.DDatabaseType;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * The type of SQLite databases.
+ *
+ * @param <C> The type of database configuration
+ * @param <T> The type of database transactions
+ * @param <N> The type of database connections
+ * @param <Q> The precise type of database query providers
+ */
+
+public interface DSDatabaseType<
+  C extends DSDatabaseConfigurationType,
+  N extends DDatabaseConnectionType<T>,
+  T extends DDatabaseTransactionType,
+  Q extends DDatabaseQueryProviderType<T, ?, ?, ?>>
+  extends DDatabaseType<C, N, T, Q>
+{
+  /**
+   * Copy the database to the given file using SQLite's online backup API.
+   * Writers may continue to use the database while the copy is in
+   * progress; the copy proceeds in increments of
+   * {@link DSDatabaseBackupOptions#pagesPerStep()} pages, pausing between
+   * steps so that writers are not starved. Any existing database in the
+   * target file is replaced.
+   *
+   * <p>SQLite restarts a backup from the first page whenever another
+   * connection writes to the source database between steps, and so, under a
+   * steady write load, a backup that pauses between steps might never
+   * finish. For databases in WAL mode (all file-based databases), the
+   * backup therefore reads every page within a single read transaction; the
+   * result is a consistent snapshot of the database at the time the backup
+   * started, writers are never blocked, and the backup never restarts. The
+   * WAL cannot be checkpointed past the snapshot until the backup
+   * completes. For other databases, the result is a consistent snapshot of
+   * the database at the time the final step completed; if the backup is
+   * restarted repeatedly, it stops pausing between steps so that it can
+   * finish ahead of the writers.</p>
+   *
+   * @param target   The target file
+   * @param options  The backup options
+   * @param progress A receiver of progress updates
+   *
+   * @throws DDatabaseException On errors
+   */
+
+  default void backup(
+    final Path target,
+    final DSDatabaseBackupOptions options,
+    final Consumer<DSDatabaseBackupProgress> progress)
+    throws DDatabaseException
+  {
+    DSBackup.execute(this, target, options, progress);
+  }
+
+  /**
+   * Copy the database to the given file using SQLite's online backup API.
+   *
+   * @param target  The target file
+   * @param options The backup options
+   *
+   * @throws DDatabaseException On errors
+   *
+   * @see #backup(Path, DSDatabaseBackupOptions, Consumer)
+   */
+
+  default void backup(
+    final Path target,
+    final DSDatabaseBackupOptions options)
+    throws DDatabaseException
+  {
+    this.backup(target, options, p -> {
+
+    });
+  }
+}
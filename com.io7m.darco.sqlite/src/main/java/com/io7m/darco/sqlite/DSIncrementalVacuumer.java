@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import org.slf4j.Logger;
+import org.sqlite.SQLiteDataSource;
+import org.sqlite.SQLiteErrorCode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background task that reclaims free pages from a database created with
+ * {@code auto_vacuum=INCREMENTAL}. The task periodically checks whether
+ * any other connection has modified the database since the previous check
+ * (using {@code PRAGMA data_version}); if the database has been idle and
+ * has free pages, a single {@code PRAGMA incremental_vacuum(N)} slice is
+ * run. The task runs on its own connection with a zero busy timeout, and
+ * so simply skips a slice if a writer is active.
+ */
+
+final class DSIncrementalVacuumer implements AutoCloseable
+{
+  private final Logger logger;
+  private final SQLiteDataSource dataSource;
+  private final Path file;
+  private final int pagesPerSlice;
+  private final Attributes labels;
+  private final ObservableLongGauge fileSizeGauge;
+  private final ObservableLongGauge freelistGauge;
+  private final LongCounter pagesReclaimed;
+  private final AtomicLong fileSize;
+  private final AtomicLong freelistCount;
+  private final ScheduledFuture<?> task;
+  private Connection connection;
+  private long dataVersionPrevious;
+  private boolean closed;
+
+  private DSIncrementalVacuumer(
+    final Logger inLogger,
+    final Meter meter,
+    final Attributes inLabels,
+    final SQLiteDataSource inDataSource,
+    final Path inFile,
+    final ScheduledExecutorService executor,
+    final DSDatabaseIncrementalVacuum configuration)
+  {
+    this.logger =
+      Objects.requireNonNull(inLogger, "logger");
+    this.labels =
+      Objects.requireNonNull(inLabels, "labels");
+    this.dataSource =
+      Objects.requireNonNull(inDataSource, "dataSource");
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.pagesPerSlice =
+      configuration.pagesPerSlice();
+    this.dataVersionPrevious =
+      -1L;
+    this.fileSize =
+      new AtomicLong(0L);
+    this.freelistCount =
+      new AtomicLong(0L);
+
+    this.fileSizeGauge =
+      meter.gaugeBuilder("darco.sqlite.file_size")
+        .setDescription("The size of the database file.")
+        .setUnit("By")
+        .ofLongs()
+        .buildWithCallback(m -> m.record(this.fileSize.get(), inLabels));
+
+    this.freelistGauge =
+      meter.gaugeBuilder("darco.sqlite.freelist_count")
+        .setDescription("The number of unused pages in the database file.")
+        .ofLongs()
+        .buildWithCallback(m -> m.record(this.freelistCount.get(), inLabels));
+
+    this.pagesReclaimed =
+      meter.counterBuilder("darco.sqlite.vacuum_pages_reclaimed")
+        .setDescription("The number of pages reclaimed by incremental vacuuming.")
+        .build();
+
+    final var intervalNanos = configuration.interval().toNanos();
+    try {
+      this.task =
+        executor.scheduleWithFixedDelay(
+          this::run,
+          intervalNanos,
+          intervalNanos,
+          TimeUnit.NANOSECONDS
+        );
+    } catch (final RuntimeException e) {
+      this.fileSizeGauge.close();
+      this.freelistGauge.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Start an incremental vacuumer.
+   *
+   * @param logger        The logger
+   * @param meter         The meter used to create instruments
+   * @param labels        The labels applied to measurements
+   * @param dataSource    The data source used to open the connection
+   * @param file          The database file
+   * @param executor      The executor on which the task will run
+   * @param configuration The vacuum configuration
+   *
+   * @return A running vacuumer
+   */
+
+  static DSIncrementalVacuumer start(
+    final Logger logger,
+    final Meter meter,
+    final Attributes labels,
+    final SQLiteDataSource dataSource,
+    final Path file,
+    final ScheduledExecutorService executor,
+    final DSDatabaseIncrementalVacuum configuration)
+  {
+    return new DSIncrementalVacuumer(
+      logger,
+      meter,
+      labels,
+      dataSource,
+      file.toAbsolutePath(),
+      executor,
+      configuration
+    );
+  }
+
+  private synchronized void run()
+  {
+    if (this.closed) {
+      return;
+    }
+
+    try {
+      final var c = this.openConnection();
+      final var dataVersion = pragmaLong(c, "PRAGMA data_version");
+      final var idle = dataVersion == this.dataVersionPrevious;
+      this.dataVersionPrevious = dataVersion;
+
+      final var freeBefore = pragmaLong(c, "PRAGMA freelist_count");
+      if (idle && freeBefore > 0L) {
+        /*
+         * The pragma frees one page each time the statement is stepped, and
+         * so the results must be consumed entirely.
+         */
+
+        try (var st = c.createStatement()) {
+          try (var rs = st.executeQuery(
+            "PRAGMA incremental_vacuum(" + this.pagesPerSlice + ")")) {
+            while (rs.next()) {
+              // Nothing to do.
+            }
+          }
+        }
+
+        final var freeAfter = pragmaLong(c, "PRAGMA freelist_count");
+        this.pagesReclaimed.add(
+          Math.max(0L, freeBefore - freeAfter),
+          this.labels
+        );
+        this.freelistCount.set(freeAfter);
+
+        /*
+         * The vacuum changed the database, but that change should not make
+         * the next check consider the database busy.
+         */
+
+        this.dataVersionPrevious = pragmaLong(c, "PRAGMA data_version");
+      } else {
+        this.freelistCount.set(freeBefore);
+      }
+
+      this.fileSize.set(Files.size(this.file));
+    } catch (final SQLException e) {
+      if ((e.getErrorCode() & 0xff) == SQLiteErrorCode.SQLITE_BUSY.code) {
+        this.logger.debug("Incremental vacuum skipped: database busy.");
+        return;
+      }
+      this.logger.error("Incremental vacuum failed: ", e);
+      this.closeConnection();
+    } catch (final IOException e) {
+      this.logger.error("Incremental vacuum failed: ", e);
+    }
+  }
+
+  private static long pragmaLong(
+    final Connection c,
+    final String text)
+    throws SQLException
+  {
+    try (var st = c.createStatement()) {
+      try (var rs = st.executeQuery(text)) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  private Connection openConnection()
+    throws SQLException
+  {
+    if (this.connection == null) {
+      final var c = this.dataSource.getConnection();
+      try (var st = c.createStatement()) {
+        st.execute("PRAGMA busy_timeout = 0");
+      }
+      this.connection = c;
+    }
+    return this.connection;
+  }
+
+  private void closeConnection()
+  {
+    if (this.connection != null) {
+      try {
+        this.connection.close();
+      } catch (final SQLException e) {
+        this.logger.debug("Failed to close vacuum connection: ", e);
+      }
+      this.connection = null;
+    }
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    this.closed = true;
+    this.task.cancel(false);
+    this.fileSizeGauge.close();
+    this.freelistGauge.close();
+    this.closeConnection();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.darco.sqlite;
+
+import com.io7m.darco.api.DDatabaseKinds;
+import com.io7m.darco.api.DDatabaseTelemetryType;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * The metric instruments used by the SQLite implementation. Instruments are
+ * created once per telemetry instance and then shared by all databases using
+ * that telemetry. As with the instruments of the abstract implementations,
+ * they are held weakly by the telemetry so that they are discarded along
+ * with it.
+ * Measurements that describe a particular database are labelled with its
+ * location, so that multiple databases in the same process report distinct
+ * series.
+ */
+
+final class DSMetrics
+{
+  private static final Map<DDatabaseTelemetryType, DSMetrics> METRICS =
+    Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final AttributeKey<String> DB_SYSTEM =
+    AttributeKey.stringKey("db.system");
+  private static final AttributeKey<String> LOCATION =
+    AttributeKey.stringKey("darco.sqlite.location");
+
+  private final DoubleHistogram busyWait;
+  private final LongCounter backupPages;
+  private final DoubleHistogram backupDuration;
+
+  private DSMetrics(
+    final Meter meter)
+  {
+    Objects.requireNonNull(meter, "meter");
+
+    this.busyWait =
+      meter.histogramBuilder("darco.sqlite.busy_wait")
+        .setDescription(
+          "The time spent waiting for other connections to release the write lock at the start of SQLite write transactions, when using the BACKOFF busy policy.")
+        .setUnit("s")
+        .build();
+
+    this.backupPages =
+      meter.counterBuilder("darco.sqlite.backup_pages")
+        .setDescription("The number of pages copied by database backups.")
+        .build();
+
+    this.backupDuration =
+      meter.histogramBuilder("darco.sqlite.backup_duration")
+        .setDescription("The time taken to perform database backups.")
+        .setUnit("s")
+        .build();
+  }
+
+  /**
+   * @param location The database location
+   *
+   * @return The labels for measurements of the database at the given location
+   */
+
+  static Attributes locationLabels(
+    final DSDatabaseLocationType location)
+  {
+    final var name =
+      switch (location) {
+        case final DSDatabaseLocationFile f ->
+          f.file().toAbsolutePath().toString();
+        case final DSDatabaseLocationMemory m ->
+          "memory:" + m.name();
+      };
+
+    return Attributes.of(
+      DB_SYSTEM, DDatabaseKinds.sqlite().value(),
+      LOCATION, name
+    );
+  }
+
+  /**
+   * @param telemetry The telemetry
+   *
+   * @return The instruments for the given telemetry
+   */
+
+  static DSMetrics get(
+    final DDatabaseTelemetryType telemetry)
+  {
+    return METRICS.computeIfAbsent(
+      telemetry,
+      t -> new DSMetrics(t.meter())
+    );
+  }
+
+  /**
+   * @return The busy wait histogram
+   */
+
+  DoubleHistogram busyWait()
+  {
+    return this.busyWait;
+  }
+
+  /**
+   * @return The backup page counter
+   */
+
+  LongCounter backupPages()
+  {
+    return this.backupPages;
+  }
+
+  /**
+   * @return The backup duration histogram
+   */
+
+  DoubleHistogram backupDuration()
+  {
+    return this.backupDuration;
+  }
+}
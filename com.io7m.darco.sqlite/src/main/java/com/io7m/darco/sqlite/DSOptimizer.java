@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.sqlite;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableDoubleGauge;
+import org.slf4j.Logger;
+import org.sqlite.SQLiteDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A background task that periodically runs {@code PRAGMA optimize} so that
+ * the query planner's statistics are refreshed as tables grow. The task
+ * also runs once more when it is closed, as recommended by the SQLite
+ * documentation.
+ *
+ * <p>The task runs on its own connection with {@code analysis_limit} set,
+ * so that any analysis performed examines a bounded number of rows per
+ * index, and with a zero busy timeout, so that it never queues behind
+ * writers. In WAL mode, the work performed never blocks readers.</p>
+ */
+
+final class DSOptimizer implements AutoCloseable
+{
+  private static final int ANALYSIS_LIMIT = 400;
+
+  private final Logger logger;
+  private final SQLiteDataSource dataSource;
+  private final Attributes labels;
+  private final DoubleHistogram optimizeDuration;
+  private final ObservableDoubleGauge optimizeInterval;
+  private final ScheduledFuture<?> task;
+  private Connection connection;
+  private boolean closed;
+
+  private DSOptimizer(
+    final Logger inLogger,
+    final Meter meter,
+    final Attributes inLabels,
+    final SQLiteDataSource inDataSource,
+    final ScheduledExecutorService executor,
+    final Duration interval)
+  {
+    this.logger =
+      Objects.requireNonNull(inLogger, "logger");
+    this.labels =
+      Objects.requireNonNull(inLabels, "labels");
+    this.dataSource =
+      Objects.requireNonNull(inDataSource, "dataSource");
+
+    this.optimizeDuration =
+      meter.histogramBuilder("darco.sqlite.optimize_duration")
+        .setDescription("The time taken to run PRAGMA optimize.")
+        .setUnit("s")
+        .build();
+
+    final var intervalSeconds =
+      (double) interval.toNanos() / 1_000_000_000.0;
+
+    this.optimizeInterval =
+      meter.gaugeBuilder("darco.sqlite.optimize_interval")
+        .setDescription("The interval between runs of PRAGMA optimize.")
+        .setUnit("s")
+        .buildWithCallback(m -> m.record(intervalSeconds, inLabels));
+
+    final var intervalNanos = interval.toNanos();
+    try {
+      this.task =
+        executor.scheduleWithFixedDelay(
+          this::run,
+          intervalNanos,
+          intervalNanos,
+          TimeUnit.NANOSECONDS
+        );
+    } catch (final RuntimeException e) {
+      this.optimizeInterval.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Start an optimizer.
+   *
+   * @param logger     The logger
+   * @param meter      The meter used to create instruments
+   * @param labels     The labels applied to measurements
+   * @param dataSource The data source used to open the connection
+   * @param executor   The executor on which the task will run
+   * @param interval   The interval between runs
+   *
+   * @return A running optimizer
+   */
+
+  static DSOptimizer start(
+    final Logger logger,
+    final Meter meter,
+    final Attributes labels,
+    final SQLiteDataSource dataSource,
+    final ScheduledExecutorService executor,
+    final Duration interval)
+  {
+    return new DSOptimizer(
+      logger,
+      meter,
+      labels,
+      dataSource,
+      executor,
+      interval
+    );
+  }
+
+  private synchronized void run()
+  {
+    if (this.closed) {
+      return;
+    }
+    this.optimize();
+  }
+
+  private void optimize()
+  {
+    final var timeStart = System.nanoTime();
+    try {
+      final var c = this.openConnection();
+      try (var st = c.createStatement()) {
+        st.execute("PRAGMA optimize");
+      }
+    } catch (final SQLException e) {
+      this.logger.error("PRAGMA optimize failed: ", e);
+      this.closeConnection();
+    } finally {
+      final var timeTaken = System.nanoTime() - timeStart;
+      this.optimizeDuration.record(
+        (double) timeTaken / 1_000_000_000.0,
+        this.labels
+      );
+    }
+  }
+
+  private Connection openConnection()
+    throws SQLException
+  {
+    if (this.connection == null) {
+      final var c = this.dataSource.getConnection();
+      try (var st = c.createStatement()) {
+        st.execute("PRAGMA busy_timeout = 0");
+        st.execute("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+      }
+      this.connection = c;
+    }
+    return this.connection;
+  }
+
+  private void closeConnection()
+  {
+    if (this.connection != null) {
+      try {
+        this.connection.close();
+      } catch (final SQLException e) {
+        this.logger.debug("Failed to close optimizer connection: ", e);
+      }
+      this.connection = null;
+    }
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.task.cancel(false);
+    this.optimizeInterval.close();
+
+    try {
+      this.optimize();
+    } finally {
+      this.closeConnection();
+    }
+  }
+}
@@ -20,12 +20,14 @@ package com.io7m.darco.tests;
 import com.io7m.darco.api.DDatabaseCreate;
 import com.io7m.darco.api.DDatabaseException;
 import com.io7m.darco.api.DDatabaseTelemetryNoOp;
+import com.io7m.darco.api.DDatabaseTransactionOptions;
 import com.io7m.darco.api.DDatabaseUpgrade;
 import com.io7m.darco.api.DRoles;
 import com.io7m.darco.api.DUsernamePassword;
 import com.io7m.darco.examples.postgresql.EPQDatabaseConfiguration;
 import com.io7m.darco.examples.postgresql.EPQDatabaseFactory;
 import com.io7m.darco.examples.postgresql.EPQDatabaseType;
+import com.io7m.darco.postgres.DPQTenant;
 import com.io7m.darco.examples.sqlite.ESWordGetType;
 import com.io7m.darco.examples.sqlite.ESWordPutType;
 import com.io7m.ervilla.api.EContainerSupervisorType;
@@ -38,12 +40,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.io7m.darco.api.DDatabaseUnit.UNIT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith({ErvillaExtension.class, ZeladorExtension.class})
@@ -52,6 +63,7 @@ public final class EPQDatabaseTest
 {
   private static EPQPostgresFixture POSTGRES_FIXTURE;
   private EPQDatabaseFactory databases;
+  private EPQDatabaseConfiguration configuration;
   private EPQDatabaseType database;
 
   @BeforeAll
@@ -77,25 +89,28 @@ public final class EPQDatabaseTest
     final var worker =
       new DUsernamePassword("postgresql", "12345678");
 
+    this.configuration =
+      new EPQDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        "localhost",
+        POSTGRES_FIXTURE.port(),
+        "postgresql",
+        false,
+        owner,
+        worker,
+        new DRoles(
+          Map.ofEntries(
+            Map.entry(owner.userName(), owner)
+          )
+        )
+      );
+
     this.database =
       this.databases.open(
-        new EPQDatabaseConfiguration(
-          Optional.empty(),
-          DDatabaseTelemetryNoOp.get(),
-          DDatabaseCreate.CREATE_DATABASE,
-          DDatabaseUpgrade.UPGRADE_DATABASE,
-          "localhost",
-          POSTGRES_FIXTURE.port(),
-          "postgresql",
-          false,
-          owner,
-          worker,
-          new DRoles(
-            Map.ofEntries(
-              Map.entry(owner.userName(), owner)
-            )
-          )
-        ),
+        this.configuration,
         event -> {
 
         }
@@ -161,4 +176,162 @@ public final class EPQDatabaseTest
     }
     assertTrue(closed.get());
   }
+
+  @Test
+  public void testNonTransactionalIndex()
+    throws Exception
+  {
+    try (var c = this.database.openConnection()) {
+      try (var t = c.openTransaction()) {
+        try (var st = t.connection().prepareStatement(
+          "SELECT i.indisvalid FROM pg_index i WHERE i.indexrelid = 'words_word_index'::regclass")) {
+          try (var rs = st.executeQuery()) {
+            assertTrue(rs.next());
+            assertTrue(rs.getBoolean(1));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testOpenFromTemplate()
+    throws Exception
+  {
+    for (int index = 0; index < 2; ++index) {
+      final var c = this.configuration;
+      final var tenant =
+        new EPQDatabaseConfiguration(
+          c.saxParsers(),
+          c.telemetry(),
+          c.create(),
+          c.upgrade(),
+          c.databaseAddress(),
+          c.databasePort(),
+          "tenant" + index,
+          c.databaseUseTLS(),
+          c.ownerRole(),
+          c.workerRole(),
+          c.roles()
+        );
+
+      final var messages = new ArrayList<String>();
+      try (var database =
+             this.databases.openFromTemplate(tenant, messages::add)) {
+        assertEquals(
+          index == 0,
+          messages.stream().anyMatch(m -> m.startsWith("Creating template"))
+        );
+
+        try (var t = database.openTransaction()) {
+          t.query(ESWordPutType.class).execute("Word" + index);
+          t.commit();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTenants()
+    throws Exception
+  {
+    final var tenantA = new DPQTenant("tenant_a");
+    final var tenantB = new DPQTenant("tenant_b");
+    final var tenantC = new DPQTenant("tenant_c");
+    final var messages = new CopyOnWriteArrayList<String>();
+
+    try (var tenants =
+           this.databases.openTenants(
+             this.configuration,
+             List.of(tenantA, tenantB),
+             messages::add)) {
+      assertEquals(Set.of(tenantA, tenantB), tenants.tenants());
+      assertTrue(messages.stream().anyMatch(m -> m.startsWith("[tenant_a] ")));
+      assertTrue(messages.stream().anyMatch(m -> m.startsWith("[tenant_b] ")));
+
+      try (var t = tenants.tenant(tenantA).openTransaction()) {
+        t.query(ESWordPutType.class).execute("WordA");
+        t.commit();
+      }
+      try (var t = tenants.tenant(tenantB).openTransaction()) {
+        assertEquals(Optional.empty(), t.query(ESWordGetType.class).execute(UNIT));
+      }
+      try (var t = tenants.tenant(tenantA).openTransaction()) {
+        assertEquals(Optional.of("WordA"), t.query(ESWordGetType.class).execute(UNIT));
+      }
+
+      final var ex =
+        assertThrows(DDatabaseException.class, () -> tenants.tenant(tenantC));
+      assertEquals("error-tenant-nonexistent", ex.errorCode());
+
+      tenants.createTenant(tenantC, messages::add);
+      assertEquals(Set.of(tenantA, tenantB, tenantC), tenants.tenants());
+    }
+
+    try (var t = this.database.openTransaction()) {
+      assertEquals(Optional.empty(), t.query(ESWordGetType.class).execute(UNIT));
+    }
+  }
+
+  @Test
+  public void testTransactionTimeout()
+    throws Exception
+  {
+    final var queryTimeout =
+      DDatabaseTransactionOptions.defaults()
+        .withQueryTimeout(Duration.ofMillis(100L));
+
+    try (var t = this.database.openTransaction(queryTimeout)) {
+      try (var st = t.connection().prepareStatement("SELECT pg_sleep(5)")) {
+        final var ex = assertThrows(SQLException.class, st::executeQuery);
+        assertEquals("57014", ex.getSQLState());
+      }
+    }
+
+    final var timeout =
+      DDatabaseTransactionOptions.defaults()
+        .withTimeout(Duration.ofMillis(100L));
+
+    try (var t = this.database.openTransaction(timeout)) {
+      try (var st = t.connection().prepareStatement("SELECT pg_sleep(5)")) {
+        assertThrows(SQLException.class, st::executeQuery);
+      }
+
+      final var ex =
+        assertThrows(DDatabaseException.class, () -> {
+          t.query(ESWordGetType.class).execute(UNIT);
+        });
+      assertEquals("error-database-timeout", ex.errorCode());
+    }
+  }
+
+  @Test
+  public void testConcurrentOpen()
+    throws Exception
+  {
+    this.database.close();
+    POSTGRES_FIXTURE.reset();
+
+    final var opened = new ArrayList<Future<EPQDatabaseType>>();
+    try (var executor = Executors.newFixedThreadPool(8)) {
+      for (int index = 0; index < 8; ++index) {
+        opened.add(executor.submit(() -> {
+          return this.databases.open(this.configuration, event -> {
+
+          });
+        }));
+      }
+    }
+
+    for (int index = 0; index < opened.size(); ++index) {
+      try (var db = opened.get(index).get()) {
+        try (var c = db.openConnection()) {
+          try (var t = c.openTransaction()) {
+            t.query(ESWordPutType.class).execute("Word" + index);
+            t.commit();
+          }
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.tests;
+
+import com.io7m.darco.api.DDatabaseCreate;
+import com.io7m.darco.api.DDatabaseTelemetryNoOp;
+import com.io7m.darco.api.DDatabaseUpgrade;
+import com.io7m.darco.examples.sqlite.ESDatabaseConfiguration;
+import com.io7m.darco.examples.sqlite.ESDatabaseFactory;
+import com.io7m.darco.examples.sqlite.ESWordGetType;
+import com.io7m.darco.examples.sqlite.ESWordPutType;
+import com.io7m.darco.sqlite.DSDatabaseAccessMode;
+import com.io7m.darco.sqlite.DSDatabaseLocationFile;
+import com.io7m.darco.sqlite.DSDatabaseProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.io7m.darco.api.DDatabaseUnit.UNIT;
+
+/**
+ * A benchmark that reports the insert and read throughput of the example
+ * SQLite database for each of the standard profiles. Each insert is
+ * performed in its own transaction, so the insert throughput is dominated
+ * by the cost of commits.
+ */
+
+public final class ESDatabaseProfileBenchmark
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ESDatabaseProfileBenchmark.class);
+
+  private static final int WARMUP_ITERATIONS = 1_000;
+  private static final int ITERATIONS = 10_000;
+
+  private ESDatabaseProfileBenchmark()
+  {
+
+  }
+
+  /**
+   * The main entry point.
+   *
+   * @param args The command-line arguments, optionally specifying the
+   *             number of iterations
+   *
+   * @throws Exception On errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws Exception
+  {
+    final var iterations =
+      args.length > 0 ? Integer.parseInt(args[0]) : ITERATIONS;
+
+    final var profiles = Map.of(
+      "durable", DSDatabaseProfile.durable(),
+      "balanced", DSDatabaseProfile.balanced(),
+      "throughput", DSDatabaseProfile.throughput()
+    );
+
+    for (final var name : profiles.keySet().stream().sorted().toList()) {
+      final var directory =
+        Files.createTempDirectory("darco-benchmark-");
+      try {
+        run(name, profiles.get(name), directory, iterations);
+      } finally {
+        try (var paths = Files.walk(directory)) {
+          for (final var path : paths.sorted(Comparator.reverseOrder())
+            .toList()) {
+            Files.deleteIfExists(path);
+          }
+        }
+      }
+    }
+  }
+
+  private static void run(
+    final String name,
+    final DSDatabaseProfile profile,
+    final Path directory,
+    final int iterations)
+    throws Exception
+  {
+    final var configuration =
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        new DSDatabaseLocationFile(directory.resolve("database.db")),
+        DSDatabaseAccessMode.READ_WRITE,
+        profile,
+        Optional.empty(),
+        Optional.empty(),
+        false,
+        Optional.empty(),
+        Optional.empty()
+      );
+
+    try (var database =
+           new ESDatabaseFactory().open(configuration, message -> {})) {
+      try (var c = database.openConnection()) {
+        for (int index = 0; index < WARMUP_ITERATIONS; ++index) {
+          try (var t = c.openTransaction()) {
+            t.query(ESWordPutType.class).execute("Warmup" + index);
+            t.commit();
+          }
+        }
+
+        final var insertStart = System.nanoTime();
+        for (int index = 0; index < iterations; ++index) {
+          try (var t = c.openTransaction()) {
+            t.query(ESWordPutType.class).execute("Word" + index);
+            t.commit();
+          }
+        }
+        final var insertTime = System.nanoTime() - insertStart;
+
+        final var readStart = System.nanoTime();
+        for (int index = 0; index < iterations; ++index) {
+          try (var t = c.openTransaction()) {
+            t.query(ESWordGetType.class).execute(UNIT);
+          }
+        }
+        final var readTime = System.nanoTime() - readStart;
+
+        LOG.info(
+          "{}: insert {} ops/s, read {} ops/s",
+          name,
+          String.format("%.1f", opsPerSecond(iterations, insertTime)),
+          String.format("%.1f", opsPerSecond(iterations, readTime))
+        );
+      }
+    }
+  }
+
+  private static double opsPerSecond(
+    final int iterations,
+    final long nanoseconds)
+  {
+    return (double) iterations / ((double) nanoseconds / 1_000_000_000.0);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.darco.tests;
+
+import com.io7m.darco.api.DDatabaseCreate;
+import com.io7m.darco.api.DDatabaseTelemetryNoOp;
+import com.io7m.darco.api.DDatabaseUpgrade;
+import com.io7m.darco.examples.sqlite.ESDatabaseConfiguration;
+import com.io7m.darco.examples.sqlite.ESDatabaseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A benchmark that reports the time taken to open an existing, up-to-date
+ * example SQLite database. Opening the database with a new factory each
+ * time requires the schema to be parsed and checked by the schema executor,
+ * whilst opening the database with a single factory takes the fast path
+ * after the first open.
+ */
+
+public final class ESDatabaseStartupBenchmark
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ESDatabaseStartupBenchmark.class);
+
+  private static final int WARMUP_ITERATIONS = 100;
+  private static final int ITERATIONS = 1_000;
+
+  private ESDatabaseStartupBenchmark()
+  {
+
+  }
+
+  /**
+   * The main entry point.
+   *
+   * @param args The command-line arguments, optionally specifying the
+   *             number of iterations
+   *
+   * @throws Exception On errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws Exception
+  {
+    final var iterations =
+      args.length > 0 ? Integer.parseInt(args[0]) : ITERATIONS;
+
+    final var directory =
+      Files.createTempDirectory("darco-benchmark-");
+
+    try {
+      final var file = directory.resolve("database.db");
+      new ESDatabaseFactory()
+        .open(configuration(file, DDatabaseCreate.CREATE_DATABASE), m -> {})
+        .close();
+
+      final var configuration =
+        configuration(file, DDatabaseCreate.DO_NOT_CREATE_DATABASE);
+
+      final var shared = new ESDatabaseFactory();
+      run("full", configuration, ESDatabaseFactory::new, iterations);
+      run("fast", configuration, () -> shared, iterations);
+    } finally {
+      try (var paths = Files.walk(directory)) {
+        for (final var path : paths.sorted(Comparator.reverseOrder())
+          .toList()) {
+          Files.deleteIfExists(path);
+        }
+      }
+    }
+  }
+
+  private static ESDatabaseConfiguration configuration(
+    final Path file,
+    final DDatabaseCreate create)
+  {
+    return new ESDatabaseConfiguration(
+      Optional.empty(),
+      DDatabaseTelemetryNoOp.get(),
+      create,
+      DDatabaseUpgrade.UPGRADE_DATABASE,
+      file
+    );
+  }
+
+  private static void run(
+    final String name,
+    final ESDatabaseConfiguration configuration,
+    final Supplier<ESDatabaseFactory> factories,
+    final int iterations)
+    throws Exception
+  {
+    for (int index = 0; index < WARMUP_ITERATIONS; ++index) {
+      factories.get().open(configuration, message -> {}).close();
+    }
+
+    final var timeStart = System.nanoTime();
+    for (int index = 0; index < iterations; ++index) {
+      factories.get().open(configuration, message -> {}).close();
+    }
+    final var time = System.nanoTime() - timeStart;
+
+    LOG.info(
+      "{}: {} ms/open",
+      name,
+      String.format("%.3f", (double) time / (double) iterations / 1_000_000.0)
+    );
+  }
+}
@@ -17,29 +17,67 @@
 
 package com.io7m.darco.tests;
 
+import com.io7m.darco.api.DDatabaseAdmissionConfiguration;
+import com.io7m.darco.api.DDatabaseAdmissionController;
 import com.io7m.darco.api.DDatabaseCreate;
 import com.io7m.darco.api.DDatabaseException;
+import com.io7m.darco.api.DDatabaseKeyRange;
+import com.io7m.darco.api.DDatabaseParallelScan;
+import com.io7m.darco.api.DDatabaseSharded;
 import com.io7m.darco.api.DDatabaseTelemetryNoOp;
+import com.io7m.darco.api.DDatabaseTransactionOptions;
 import com.io7m.darco.api.DDatabaseUpgrade;
+import com.io7m.darco.api.DDatabaseWatchdogConfiguration;
 import com.io7m.darco.examples.sqlite.ESDatabaseConfiguration;
 import com.io7m.darco.examples.sqlite.ESDatabaseFactory;
+import com.io7m.darco.examples.sqlite.ESDatabaseTransactionType;
 import com.io7m.darco.examples.sqlite.ESDatabaseType;
 import com.io7m.darco.examples.sqlite.ESWordGetType;
 import com.io7m.darco.examples.sqlite.ESWordPutType;
+import com.io7m.darco.sqlite.DSDatabaseAccessMode;
+import com.io7m.darco.sqlite.DSDatabaseBackupOptions;
+import com.io7m.darco.sqlite.DSDatabaseBackupProgress;
+import com.io7m.darco.sqlite.DSDatabaseIncrementalVacuum;
+import com.io7m.darco.sqlite.DSDatabaseLocationFile;
+import com.io7m.darco.sqlite.DSDatabaseLocationMemory;
+import com.io7m.darco.sqlite.DSDatabaseProfile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.io7m.darco.api.DDatabaseDurability.RELAXED;
+import static com.io7m.darco.api.DDatabaseIsolationLevel.SERIALIZABLE;
+import static com.io7m.darco.api.DDatabaseTransactionMode.WRITE;
+import static com.io7m.darco.api.DDatabaseTransactionState.CLEAN;
+import static com.io7m.darco.api.DDatabaseTransactionState.COMMITTED;
+import static com.io7m.darco.api.DDatabaseTransactionState.DIRTY;
+import static com.io7m.darco.api.DDatabaseTransactionState.ROLLED_BACK;
 import static com.io7m.darco.api.DDatabaseUnit.UNIT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class ESDatabaseTest
 {
+  private static final String ENDLESS_QUERY = """
+    WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM c)
+    SELECT COUNT(*) FROM c
+    """;
+
   private ESDatabaseFactory databases;
   private Path databaseFile;
   private ESDatabaseType database;
@@ -127,4 +165,1265 @@ public final class ESDatabaseTest
     }
     assertTrue(closed.get());
   }
+
+  @Test
+  public void testRoundTripsCommitted()
+    throws DDatabaseException
+  {
+    try (var c = this.database.openConnection()) {
+      try (var t = c.openTransaction()) {
+        assertEquals(CLEAN, t.state());
+        t.query(ESWordPutType.class).execute("Word0");
+        assertEquals(DIRTY, t.state());
+        t.commit();
+        assertEquals(COMMITTED, t.state());
+        assertEquals(2L, t.roundTrips());
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTripsUnused()
+    throws DDatabaseException
+  {
+    try (var c = this.database.openConnection()) {
+      final var t = c.openTransaction();
+      t.rollback();
+      t.commit();
+      t.close();
+      assertEquals(COMMITTED, t.state());
+      assertEquals(0L, t.roundTrips());
+    }
+  }
+
+  @Test
+  public void testRoundTripsRolledBackOnClose()
+    throws DDatabaseException
+  {
+    try (var c = this.database.openConnection()) {
+      final var t = c.openTransaction();
+      t.query(ESWordPutType.class).execute("Word0");
+      t.close();
+      assertEquals(ROLLED_BACK, t.state());
+      assertEquals(2L, t.roundTrips());
+
+      try (var u = c.openTransaction()) {
+        assertEquals(
+          Optional.empty(),
+          u.query(ESWordGetType.class).execute(UNIT)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testQueryOnce()
+    throws DDatabaseException
+  {
+    assertEquals(
+      Optional.empty(),
+      this.database.queryOnce(ESWordGetType.class, UNIT)
+    );
+
+    this.database.queryOnce(ESWordPutType.class, "Word0");
+
+    assertEquals(
+      "Word0",
+      this.database.queryOnce(ESWordGetType.class, UNIT).orElseThrow()
+    );
+
+    try (var t = this.database.openTransaction()) {
+      t.query(ESWordPutType.class).execute("Word1");
+    }
+
+    try (var t = this.database.openTransaction()) {
+      assertEquals(
+        "Word0",
+        t.query(ESWordGetType.class).execute(UNIT).orElseThrow()
+      );
+    }
+  }
+
+  @Test
+  public void testSavepoints()
+    throws Exception
+  {
+    try (var t = this.database.openTransaction()) {
+      t.query(ESWordPutType.class).execute("Word0");
+
+      final var ex =
+        assertThrows(DDatabaseException.class, () -> {
+          t.withSavepoint(() -> {
+            t.query(ESWordPutType.class).execute("Word1");
+            throw new DDatabaseException(
+              "Failed",
+              "error-test",
+              Map.of(),
+              Optional.empty()
+            );
+          });
+        });
+      assertEquals("error-test", ex.errorCode());
+
+      t.withSavepoint(() -> {
+        return t.query(ESWordPutType.class).execute("Word2");
+      });
+
+      final var savepoint = t.savepoint();
+      t.query(ESWordPutType.class).execute("Word3");
+      t.rollbackTo(savepoint);
+      t.release(savepoint);
+      t.commit();
+    }
+
+    try (var t = this.database.openTransaction()) {
+      final var words = new ArrayList<String>();
+      try (var s = t.connection()
+        .prepareStatement("SELECT word FROM words ORDER BY word")) {
+        try (var r = s.executeQuery()) {
+          while (r.next()) {
+            words.add(r.getString(1));
+          }
+        }
+      }
+      assertEquals(List.of("Word0", "Word2"), words);
+    }
+  }
+
+  @Test
+  public void testTransactionOptionsRelaxedDurability()
+    throws Exception
+  {
+    final var options =
+      DDatabaseTransactionOptions.defaults()
+        .withIsolationLevel(SERIALIZABLE)
+        .withDurability(RELAXED);
+
+    try (var c = this.database.openConnection()) {
+      final int synchronous;
+      try (var t = c.openTransaction()) {
+        synchronous = pragmaSynchronous(t);
+      }
+
+      try (var t = c.openTransaction(options)) {
+        assertEquals(0, pragmaSynchronous(t));
+        t.query(ESWordPutType.class).execute("Word0");
+        t.commit();
+      }
+
+      try (var t = c.openTransaction()) {
+        assertEquals(synchronous, pragmaSynchronous(t));
+        assertEquals(
+          "Word0",
+          t.query(ESWordGetType.class).execute(UNIT).orElseThrow()
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testTransactionWriteModeBusy()
+    throws Exception
+  {
+    final var options =
+      DDatabaseTransactionOptions.defaults()
+        .withMode(WRITE);
+
+    try (var c0 = this.database.openConnection();
+         var c1 = this.database.openConnection()) {
+      try (var t0 = c0.openTransaction(options)) {
+        final var ex =
+          assertThrows(DDatabaseException.class, () -> {
+            c1.openTransaction(options);
+          });
+        assertEquals("error-database-busy", ex.errorCode());
+
+        t0.query(ESWordPutType.class).execute("Word0");
+        t0.commit();
+      }
+
+      try (var t1 = c1.openTransaction(options)) {
+        t1.query(ESWordPutType.class).execute("Word1");
+        t1.commit();
+      }
+
+      try (var t = c0.openTransaction()) {
+        assertEquals(
+          List.of("Word0", "Word1"),
+          words(t)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testTransactionWriteModeAfterCommit()
+    throws Exception
+  {
+    final var options =
+      DDatabaseTransactionOptions.defaults()
+        .withMode(WRITE);
+
+    try (var c0 = this.database.openConnection();
+         var c1 = this.database.openConnection()) {
+      try (var t0 = c0.openTransaction(options)) {
+        t0.query(ESWordPutType.class).execute("Word0");
+        t0.commit();
+
+        try (var t1 = c1.openTransaction(options)) {
+          t1.commit();
+        }
+
+        assertEquals(
+          "Word0",
+          t0.query(ESWordGetType.class).execute(UNIT).orElseThrow()
+        );
+
+        final var ex =
+          assertThrows(DDatabaseException.class, () -> {
+            c1.openTransaction(options);
+          });
+        assertEquals("error-database-busy", ex.errorCode());
+
+        t0.query(ESWordPutType.class).execute("Word1");
+        t0.commit();
+      }
+
+      try (var t = c0.openTransaction()) {
+        assertEquals(
+          List.of("Word0", "Word1"),
+          words(t)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testBackgroundCheckpoints()
+    throws Exception
+  {
+    this.database.close();
+
+    final var walFile =
+      this.databaseFile.resolveSibling("database.db-wal");
+
+    try (var checkpointed =
+           this.databases.open(
+             new ESDatabaseConfiguration(
+               Optional.empty(),
+               DDatabaseTelemetryNoOp.get(),
+               DDatabaseCreate.CREATE_DATABASE,
+               DDatabaseUpgrade.UPGRADE_DATABASE,
+               new DSDatabaseLocationFile(this.databaseFile),
+               DSDatabaseAccessMode.READ_WRITE,
+               DSDatabaseProfile.durable(),
+               Optional.of(Duration.ofMillis(10L)),
+               Optional.empty(),
+               false,
+               Optional.empty(),
+               Optional.empty()
+             ),
+             event -> {
+
+             })) {
+
+      try (var c = checkpointed.openConnection()) {
+        try (var t = c.openTransaction()) {
+          for (int index = 0; index < 1000; ++index) {
+            t.query(ESWordPutType.class).execute("Word" + index);
+          }
+          t.commit();
+        }
+        assertTrue(Files.size(walFile) > 0L);
+
+        /*
+         * Once writes stop, the checkpointer should eventually truncate
+         * the WAL.
+         */
+
+        final var timeEnd =
+          System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+        while (Files.size(walFile) > 0L && System.nanoTime() < timeEnd) {
+          Thread.sleep(10L);
+        }
+        assertEquals(0L, Files.size(walFile));
+
+        try (var t = c.openTransaction()) {
+          assertEquals(1000, words(t).size());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAnalyzeAndOptimize()
+    throws Exception
+  {
+    this.database.close();
+    Files.delete(this.databaseFile);
+
+    try (var optimized =
+           this.databases.open(
+             new ESDatabaseConfiguration(
+               Optional.empty(),
+               DDatabaseTelemetryNoOp.get(),
+               DDatabaseCreate.CREATE_DATABASE,
+               DDatabaseUpgrade.UPGRADE_DATABASE,
+               new DSDatabaseLocationFile(this.databaseFile),
+               DSDatabaseAccessMode.READ_WRITE,
+               DSDatabaseProfile.durable(),
+               Optional.empty(),
+               Optional.of(Duration.ofMillis(10L)),
+               true,
+               Optional.empty(),
+               Optional.empty()
+             ),
+             event -> {
+
+             })) {
+
+      try (var c = optimized.openConnection()) {
+        try (var t = c.openTransaction()) {
+          for (int index = 0; index < 100; ++index) {
+            t.query(ESWordPutType.class).execute("Word" + index);
+          }
+          t.commit();
+        }
+
+        Thread.sleep(100L);
+
+        try (var t = c.openTransaction()) {
+          try (var s = t.connection().createStatement()) {
+            try (var r = s.executeQuery(
+              "SELECT count(*) FROM sqlite_master WHERE name = 'sqlite_stat1'")) {
+              r.next();
+              assertEquals(1, r.getInt(1));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInMemory()
+    throws Exception
+  {
+    final var configuration =
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        new DSDatabaseLocationMemory("darco-" + UUID.randomUUID()),
+        DSDatabaseAccessMode.READ_WRITE,
+        DSDatabaseProfile.durable(),
+        Optional.of(Duration.ofMillis(10L)),
+        Optional.empty(),
+        false,
+        Optional.empty(),
+        Optional.empty()
+      );
+
+    try (var memory = this.databases.open(configuration, event -> {})) {
+      try (var c0 = memory.openConnection();
+           var c1 = memory.openConnection()) {
+        try (var t = c0.openTransaction()) {
+          t.query(ESWordPutType.class).execute("Word0");
+          t.commit();
+        }
+        try (var t = c1.openTransaction()) {
+          assertEquals(List.of("Word0"), words(t));
+        }
+      }
+    }
+
+    try (var memory = this.databases.open(configuration, event -> {})) {
+      try (var c = memory.openConnection()) {
+        try (var t = c.openTransaction()) {
+          assertEquals(List.of(), words(t));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadOnly()
+    throws Exception
+  {
+    try (var c = this.database.openConnection()) {
+      try (var t = c.openTransaction()) {
+        t.query(ESWordPutType.class).execute("Word0");
+        t.commit();
+      }
+    }
+    this.database.close();
+
+    for (final var mode : List.of(
+      DSDatabaseAccessMode.READ_ONLY,
+      DSDatabaseAccessMode.READ_ONLY_IMMUTABLE)) {
+      try (var readOnly =
+             this.databases.open(
+               new ESDatabaseConfiguration(
+                 Optional.empty(),
+                 DDatabaseTelemetryNoOp.get(),
+                 DDatabaseCreate.DO_NOT_CREATE_DATABASE,
+                 DDatabaseUpgrade.DO_NOT_UPGRADE_DATABASE,
+                 new DSDatabaseLocationFile(this.databaseFile),
+                 mode,
+                 DSDatabaseProfile.reader(),
+                 Optional.empty(),
+                 Optional.empty(),
+                 false,
+                 Optional.empty(),
+                 Optional.empty()
+               ),
+               event -> {
+
+               })) {
+
+        try (var c = readOnly.openConnection()) {
+          try (var t = c.openTransaction()) {
+            assertEquals(List.of("Word0"), words(t));
+            assertThrows(DDatabaseException.class, () -> {
+              t.query(ESWordPutType.class).execute("Word1");
+            });
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadOnlyUnversioned()
+    throws Exception
+  {
+    final var file =
+      this.databaseFile.resolveSibling("other.db");
+
+    try (var c = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+      try (var st = c.createStatement()) {
+        st.execute("CREATE TABLE t (x INTEGER)");
+      }
+    }
+
+    final var ex =
+      assertThrows(DDatabaseException.class, () -> {
+        this.databases.open(
+          new ESDatabaseConfiguration(
+            Optional.empty(),
+            DDatabaseTelemetryNoOp.get(),
+            DDatabaseCreate.DO_NOT_CREATE_DATABASE,
+            DDatabaseUpgrade.DO_NOT_UPGRADE_DATABASE,
+            new DSDatabaseLocationFile(file),
+            DSDatabaseAccessMode.READ_ONLY,
+            DSDatabaseProfile.reader(),
+            Optional.empty(),
+            Optional.empty(),
+            false,
+            Optional.empty(),
+            Optional.empty()
+          ),
+          event -> {
+
+          });
+      });
+    assertEquals("error-database-schema-version", ex.errorCode());
+  }
+
+  @Test
+  public void testBackup()
+    throws Exception
+  {
+    try (var c = this.database.openConnection()) {
+      try (var t = c.openTransaction()) {
+        for (int index = 0; index < 1000; ++index) {
+          t.query(ESWordPutType.class).execute("Word" + index);
+        }
+        t.commit();
+      }
+    }
+
+    final var target =
+      this.databaseFile.resolveSibling("backup.db");
+    final var progress =
+      new ArrayList<DSDatabaseBackupProgress>();
+
+    this.database.backup(
+      target,
+      new DSDatabaseBackupOptions(1, Duration.ofMillis(1L)),
+      progress::add
+    );
+
+    assertTrue(progress.size() > 1);
+    assertEquals(1.0, progress.get(progress.size() - 1).fraction());
+
+    try (var c = DriverManager.getConnection("jdbc:sqlite:" + target)) {
+      try (var st = c.createStatement()) {
+        try (var r = st.executeQuery("SELECT count(*) FROM words")) {
+          r.next();
+          assertEquals(1000, r.getInt(1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBackupConcurrentWriters()
+    throws Exception
+  {
+    try (var c = this.database.openConnection()) {
+      try (var t = c.openTransaction()) {
+        for (int index = 0; index < 1000; ++index) {
+          t.query(ESWordPutType.class).execute("Word" + index);
+        }
+        t.commit();
+      }
+    }
+
+    final var done = new AtomicBoolean(false);
+    final var writer = Thread.ofPlatform().start(() -> {
+      try (var c = this.database.openConnection()) {
+        while (!done.get()) {
+          try (var t = c.openTransaction()) {
+            t.query(ESWordPutType.class).execute(UUID.randomUUID().toString());
+            t.commit();
+          }
+        }
+      } catch (final DDatabaseException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    final var target =
+      this.databaseFile.resolveSibling("backup.db");
+    final var progress =
+      new ArrayList<DSDatabaseBackupProgress>();
+
+    try {
+      this.database.backup(
+        target,
+        new DSDatabaseBackupOptions(1, Duration.ofMillis(5L)),
+        progress::add
+      );
+    } finally {
+      done.set(true);
+      writer.join();
+    }
+
+    for (int index = 1; index < progress.size(); ++index) {
+      assertTrue(
+        progress.get(index).pagesCopied()
+        >= progress.get(index - 1).pagesCopied()
+      );
+    }
+
+    try (var c = DriverManager.getConnection("jdbc:sqlite:" + target)) {
+      try (var st = c.createStatement()) {
+        try (var r = st.executeQuery("SELECT count(*) FROM words")) {
+          r.next();
+          assertTrue(r.getInt(1) >= 1000);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIncrementalVacuum()
+    throws Exception
+  {
+    this.database.close();
+    Files.delete(this.databaseFile);
+
+    try (var vacuumed =
+           this.databases.open(
+             new ESDatabaseConfiguration(
+               Optional.empty(),
+               DDatabaseTelemetryNoOp.get(),
+               DDatabaseCreate.CREATE_DATABASE,
+               DDatabaseUpgrade.UPGRADE_DATABASE,
+               new DSDatabaseLocationFile(this.databaseFile),
+               DSDatabaseAccessMode.READ_WRITE,
+               DSDatabaseProfile.durable(),
+               Optional.empty(),
+               Optional.empty(),
+               false,
+               Optional.of(
+                 new DSDatabaseIncrementalVacuum(Duration.ofMillis(10L), 10)
+               ),
+               Optional.empty()
+             ),
+             event -> {
+
+             })) {
+
+      try (var c = vacuumed.openConnection()) {
+        try (var t = c.openTransaction()) {
+          assertEquals(2L, pragmaLong(t, "PRAGMA auto_vacuum"));
+          for (int index = 0; index < 1000; ++index) {
+            t.query(ESWordPutType.class).execute("Word" + index);
+          }
+          t.commit();
+        }
+
+        try (var t = c.openTransaction()) {
+          try (var st = t.connection().createStatement()) {
+            st.execute("DELETE FROM words");
+          }
+          t.commit();
+        }
+
+        try (var t = c.openTransaction()) {
+          assertTrue(pragmaLong(t, "PRAGMA freelist_count") > 0L);
+        }
+
+        final var timeEnd =
+          System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+
+        long free;
+        do {
+          Thread.sleep(10L);
+          try (var t = c.openTransaction()) {
+            free = pragmaLong(t, "PRAGMA freelist_count");
+          }
+        } while (free > 0L && System.nanoTime() < timeEnd);
+
+        assertEquals(0L, free);
+      }
+    }
+  }
+
+  @Test
+  public void testReopenSkipsSchemaParsing()
+    throws Exception
+  {
+    this.database.close();
+
+    final var configuration =
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.DO_NOT_CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        this.databaseFile
+      );
+
+    final var messages = new ArrayList<String>();
+    this.databases.open(configuration, messages::add).close();
+    assertEquals(List.of("Database is already at version 1"), messages);
+
+    messages.clear();
+    new ESDatabaseFactory().open(configuration, messages::add).close();
+    assertEquals(List.of(), messages);
+  }
+
+  @Test
+  public void testOpenAsynchronously()
+    throws Exception
+  {
+    this.database.close();
+
+    final var messages = new CopyOnWriteArrayList<String>();
+    try (var database =
+           new ESDatabaseFactory().openAsynchronously(
+             new ESDatabaseConfiguration(
+               Optional.empty(),
+               DDatabaseTelemetryNoOp.get(),
+               DDatabaseCreate.CREATE_DATABASE,
+               DDatabaseUpgrade.UPGRADE_DATABASE,
+               this.databaseFile.resolveSibling("async.db")
+             ),
+             messages::add
+           )) {
+
+      try (var t = database.openTransaction()) {
+        t.query(ESWordPutType.class).execute("Word0");
+        t.commit();
+      }
+
+      assertTrue(database.readiness().isDone());
+      assertTrue(
+        messages.stream().anyMatch(m -> m.startsWith("Upgrading database"))
+      );
+      assertEquals(
+        Optional.of("Word0"),
+        database.queryOnce(ESWordGetType.class, UNIT)
+      );
+    }
+  }
+
+  @Test
+  public void testUpgradeSlowestStatements()
+    throws Exception
+  {
+    final var messages = new ArrayList<String>();
+    new ESDatabaseFactory().open(
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        this.databaseFile.resolveSibling("timed.db")
+      ),
+      messages::add
+    ).close();
+
+    final var index = messages.indexOf("Slowest upgrade statements:");
+    assertTrue(index >= 0);
+
+    final var slowest = messages.subList(index + 1, messages.size());
+    assertEquals(2, slowest.size());
+    assertTrue(
+      slowest.stream().anyMatch(m -> m.contains("(version 1): CREATE TABLE words"))
+    );
+  }
+
+  @Test
+  public void testOpenFromTemplate()
+    throws Exception
+  {
+    final var templates =
+      this.databaseFile.resolveSibling("templates");
+
+    for (int index = 0; index < 2; ++index) {
+      final var messages = new ArrayList<String>();
+      try (var database =
+             this.databases.openFromTemplate(
+               new ESDatabaseConfiguration(
+                 Optional.empty(),
+                 DDatabaseTelemetryNoOp.get(),
+                 DDatabaseCreate.CREATE_DATABASE,
+                 DDatabaseUpgrade.UPGRADE_DATABASE,
+                 this.databaseFile.resolveSibling("tenant%d.db".formatted(index))
+               ),
+               templates,
+               messages::add
+             )) {
+
+        assertEquals(
+          index == 0,
+          messages.stream().anyMatch(m -> m.startsWith("Creating template"))
+        );
+        assertTrue(
+          messages.stream().anyMatch(m -> m.startsWith("Creating database"))
+        );
+
+        try (var t = database.openTransaction()) {
+          t.query(ESWordPutType.class).execute("Word" + index);
+          assertEquals(List.of("Word" + index), words(t));
+          t.commit();
+        }
+      }
+    }
+
+    assertTrue(Files.isRegularFile(templates.resolve("darco_template_1.db")));
+  }
+
+  @Test
+  public void testOpenAsynchronouslyFails()
+    throws Exception
+  {
+    try (var database =
+           new ESDatabaseFactory().openAsynchronously(
+             new ESDatabaseConfiguration(
+               Optional.empty(),
+               DDatabaseTelemetryNoOp.get(),
+               DDatabaseCreate.DO_NOT_CREATE_DATABASE,
+               DDatabaseUpgrade.UPGRADE_DATABASE,
+               this.databaseFile.resolveSibling("nonexistent.db")
+             ),
+             message -> {
+
+             }
+           )) {
+
+      assertThrows(DDatabaseException.class, database::openTransaction);
+      assertTrue(database.readiness().isCompletedExceptionally());
+    }
+  }
+
+  private static long pragmaLong(
+    final ESDatabaseTransactionType t,
+    final String text)
+    throws SQLException
+  {
+    try (var s = t.connection().createStatement()) {
+      try (var r = s.executeQuery(text)) {
+        r.next();
+        return r.getLong(1);
+      }
+    }
+  }
+
+  private static List<String> words(
+    final ESDatabaseTransactionType t)
+    throws SQLException
+  {
+    final var results = new ArrayList<String>();
+    try (var s = t.connection().createStatement()) {
+      try (var r = s.executeQuery("SELECT word FROM words ORDER BY word")) {
+        while (r.next()) {
+          results.add(r.getString(1));
+        }
+      }
+    }
+    return results;
+  }
+
+  private static int pragmaSynchronous(
+    final ESDatabaseTransactionType t)
+    throws SQLException
+  {
+    try (var s = t.connection().createStatement()) {
+      try (var r = s.executeQuery("PRAGMA synchronous")) {
+        r.next();
+        return r.getInt(1);
+      }
+    }
+  }
+
+  @Test
+  public void testSharded()
+    throws Exception
+  {
+    final var configurations = new ArrayList<ESDatabaseConfiguration>();
+    for (int index = 0; index < 3; ++index) {
+      configurations.add(
+        new ESDatabaseConfiguration(
+          Optional.empty(),
+          DDatabaseTelemetryNoOp.get(),
+          DDatabaseCreate.CREATE_DATABASE,
+          DDatabaseUpgrade.UPGRADE_DATABASE,
+          this.databaseFile.resolveSibling("shard%d.db".formatted(index))
+        )
+      );
+    }
+
+    final var messages = new CopyOnWriteArrayList<String>();
+    try (var sharded =
+           DDatabaseSharded.open(this.databases, configurations, messages::add)) {
+      assertEquals(3, sharded.shards().size());
+      assertTrue(messages.stream().anyMatch(m -> m.startsWith("[shard 2] ")));
+
+      final var used = new HashSet<Integer>();
+      for (int index = 0; index < 30; ++index) {
+        final var word = "Word" + index;
+        assertEquals(
+          sharded.shardIndexFor(word),
+          sharded.shardIndexFor(word)
+        );
+        used.add(Integer.valueOf(sharded.shardIndexFor(word)));
+
+        try (var t = sharded.openTransaction(word)) {
+          t.query(ESWordPutType.class).execute(word);
+          t.commit();
+        }
+      }
+      assertEquals(3, used.size());
+
+      final var results =
+        sharded.queryAll(ESWordGetType.class, UNIT);
+      assertEquals(3, results.size());
+      for (int index = 0; index < 3; ++index) {
+        final var word = results.get(index).orElseThrow();
+        assertEquals(index, sharded.shardIndexFor(word));
+      }
+
+      final long present =
+        sharded.queryAll(
+          ESWordGetType.class,
+          UNIT,
+          rs -> rs.stream().filter(Optional::isPresent).count()
+        );
+      assertEquals(3L, present);
+    }
+  }
+
+  @Test
+  public void testParallelScan()
+    throws Exception
+  {
+    try (var t = this.database.openTransaction()) {
+      for (int index = 0; index < 1000; ++index) {
+        t.query(ESWordPutType.class).execute("Word" + index);
+      }
+      t.commit();
+    }
+
+    final var range = new DDatabaseKeyRange(1L, 1001L);
+    assertEquals(8, range.split(8).size());
+    assertEquals(1000L, range.split(8).stream().mapToLong(DDatabaseKeyRange::size).sum());
+    assertEquals(List.of(new DDatabaseKeyRange(0L, 2L)), new DDatabaseKeyRange(0L, 2L).split(1));
+    assertEquals(2, new DDatabaseKeyRange(0L, 2L).split(8).size());
+
+    final long count =
+      DDatabaseParallelScan.scan(
+        this.database,
+        range,
+        4,
+        (transaction, r) -> {
+          try (var st = transaction.connection().prepareStatement(
+            "SELECT COUNT(*) FROM words WHERE rowid >= ? AND rowid < ?")) {
+            st.setLong(1, r.lower());
+            st.setLong(2, r.upper());
+            try (var rs = st.executeQuery()) {
+              rs.next();
+              return Long.valueOf(rs.getLong(1));
+            }
+          } catch (final SQLException e) {
+            throw DDatabaseException.ofException(e);
+          }
+        },
+        Long::sum
+      ).longValue();
+
+    assertEquals(1000L, count);
+
+    final var ex =
+      assertThrows(DDatabaseException.class, () -> {
+        DDatabaseParallelScan.scan(
+          this.database,
+          range,
+          4,
+          (transaction, r) -> {
+            throw new DDatabaseException(
+              "Failed.",
+              "error-scan-test",
+              Map.of(),
+              Optional.empty()
+            );
+          },
+          (x, y) -> x
+        );
+      });
+    assertEquals("error-scan-test", ex.errorCode());
+  }
+
+  @Test
+  public void testKeyRangeSplitFullRange()
+  {
+    final var range =
+      new DDatabaseKeyRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    assertThrows(ArithmeticException.class, range::size);
+
+    final var parts = range.split(4);
+    assertEquals(4, parts.size());
+    assertEquals(Long.MIN_VALUE, parts.get(0).lower());
+    assertEquals(Long.MAX_VALUE, parts.get(3).upper());
+    for (int index = 1; index < parts.size(); ++index) {
+      assertEquals(parts.get(index - 1).upper(), parts.get(index).lower());
+    }
+    assertEquals(1L << 62, parts.get(0).size());
+    assertEquals(1L << 62, parts.get(1).size());
+    assertEquals(1L << 62, parts.get(2).size());
+    assertEquals((1L << 62) - 1L, parts.get(3).size());
+
+    assertEquals(List.of(range), range.split(1));
+  }
+
+  @Test
+  public void testAdmissionControl()
+    throws Exception
+  {
+    final var configuration =
+      new DDatabaseAdmissionConfiguration(
+        2,
+        1,
+        4,
+        Duration.ofHours(1L),
+        0.5,
+        Duration.ZERO
+      );
+
+    try (var admission =
+           new DDatabaseAdmissionController(
+             configuration,
+             DDatabaseTelemetryNoOp.get(),
+             "org.sqlite")) {
+      final var p0 = admission.acquire();
+      final var p1 = admission.acquire();
+      assertEquals(2, admission.inFlight());
+
+      final var ex =
+        assertThrows(DDatabaseException.class, admission::acquire);
+      assertEquals("error-database-overloaded", ex.errorCode());
+
+      p0.close();
+      p0.close();
+      assertEquals(3, admission.limit());
+      assertEquals(1, admission.inFlight());
+
+      p1.fail();
+      p1.close();
+      assertEquals(1, admission.limit());
+      assertEquals(0, admission.inFlight());
+
+    }
+
+    try (var waiting =
+           new DDatabaseAdmissionController(
+             new DDatabaseAdmissionConfiguration(
+               1,
+               1,
+               1,
+               Duration.ofHours(1L),
+               0.5,
+               Duration.ofSeconds(10L)
+             ),
+             DDatabaseTelemetryNoOp.get(),
+             "org.sqlite")) {
+      final var held = waiting.acquire();
+      Thread.ofPlatform().start(() -> {
+        try {
+          Thread.sleep(50L);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        held.close();
+      });
+
+      try (var ignored = waiting.acquire()) {
+        assertEquals(1, waiting.inFlight());
+      }
+    }
+
+    try (var bursty =
+           new DDatabaseAdmissionController(
+             new DDatabaseAdmissionConfiguration(
+               8,
+               1,
+               8,
+               Duration.ofHours(1L),
+               0.5,
+               Duration.ZERO
+             ),
+             DDatabaseTelemetryNoOp.get(),
+             "org.sqlite")) {
+      final var p0 = bursty.acquire();
+      final var p1 = bursty.acquire();
+      final var p2 = bursty.acquire();
+      p0.fail();
+      p1.fail();
+      p2.fail();
+      p0.close();
+      p1.close();
+      p2.close();
+      assertEquals(4, bursty.limit());
+    }
+  }
+
+  @Test
+  public void testTransactionTimeout()
+    throws Exception
+  {
+    final var options =
+      DDatabaseTransactionOptions.defaults()
+        .withTimeout(Duration.ofMillis(100L));
+
+    try (var t = this.database.openTransaction(options)) {
+      try (var st = t.connection().prepareStatement(ENDLESS_QUERY)) {
+        assertThrows(SQLException.class, st::executeQuery);
+      }
+
+      final var ex =
+        assertThrows(DDatabaseException.class, () -> {
+          t.query(ESWordGetType.class).execute(UNIT);
+        });
+      assertEquals("error-database-timeout", ex.errorCode());
+    }
+
+    try (var t = this.database.openTransaction()) {
+      assertEquals(Optional.empty(), t.query(ESWordGetType.class).execute(UNIT));
+    }
+  }
+
+  @Test
+  public void testTransactionCancel()
+    throws Exception
+  {
+    try (var t = this.database.openTransaction()) {
+      Thread.ofPlatform().start(() -> {
+        try {
+          Thread.sleep(100L);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        t.cancel();
+      });
+
+      try (var st = t.connection().prepareStatement(ENDLESS_QUERY)) {
+        assertThrows(SQLException.class, st::executeQuery);
+      }
+
+      final var ex =
+        assertThrows(DDatabaseException.class, () -> {
+          t.query(ESWordGetType.class).execute(UNIT);
+        });
+      assertEquals("error-database-cancelled", ex.errorCode());
+    }
+  }
+
+  @Test
+  public void testWatchdog()
+    throws Exception
+  {
+    final var configuration =
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        new DSDatabaseLocationFile(this.databaseFile.resolveSibling("w.db")),
+        DSDatabaseAccessMode.READ_WRITE,
+        DSDatabaseProfile.durable(),
+        Optional.empty(),
+        Optional.empty(),
+        false,
+        Optional.empty(),
+        Optional.of(
+          new DDatabaseWatchdogConfiguration(
+            Duration.ofMillis(10L),
+            Duration.ofMillis(50L),
+            Optional.of(Duration.ofMillis(100L)),
+            1
+          )
+        )
+      );
+
+    try (var db = this.databases.open(configuration, event -> { })) {
+      assertEquals(List.of(), db.registry().liveConnections());
+
+      try (var t = db.openTransaction()) {
+        final var live = db.registry().liveConnections();
+        assertEquals(1, live.size());
+        assertEquals("unused", live.get(0).role());
+        assertTrue(live.get(0).timeTransactionOpened().isPresent());
+        assertTrue(
+          live.get(0).openedBy()
+            .stream()
+            .anyMatch(e -> e.getMethodName().equals("testWatchdog"))
+        );
+
+        try (var st = t.connection().prepareStatement(ENDLESS_QUERY)) {
+          assertThrows(SQLException.class, st::executeQuery);
+        }
+
+        final var ex =
+          assertThrows(DDatabaseException.class, () -> {
+            t.query(ESWordGetType.class).execute(UNIT);
+          });
+        assertEquals("error-database-cancelled", ex.errorCode());
+      }
+
+      assertEquals(List.of(), db.registry().liveConnections());
+    }
+  }
+
+  @Test
+  public void testWatchdogAbortsIdleTransaction()
+    throws Exception
+  {
+    final var configuration =
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        new DSDatabaseLocationFile(this.databaseFile.resolveSibling("a.db")),
+        DSDatabaseAccessMode.READ_WRITE,
+        DSDatabaseProfile.durable()
+          .withBusyTimeout(Duration.ofSeconds(5L)),
+        Optional.empty(),
+        Optional.empty(),
+        false,
+        Optional.empty(),
+        Optional.of(
+          new DDatabaseWatchdogConfiguration(
+            Duration.ofMillis(10L),
+            Duration.ofMillis(50L),
+            Optional.of(Duration.ofMillis(500L)),
+            0
+          )
+        )
+      );
+
+    final var options =
+      DDatabaseTransactionOptions.defaults()
+        .withMode(WRITE);
+
+    try (var db = this.databases.open(configuration, event -> { })) {
+      try (var c0 = db.openConnection();
+           var c1 = db.openConnection()) {
+        try (var t0 = c0.openTransaction(options)) {
+          t0.query(ESWordPutType.class).execute("Word0");
+
+          /*
+           * The idle transaction holds the write lock until the watchdog
+           * aborts it; opening another write transaction waits for that.
+           * The wait is kept shorter than the cancel threshold so that the
+           * watchdog leaves the second transaction alone.
+           */
+
+          Thread.sleep(300L);
+
+          try (var t1 = c1.openTransaction(options)) {
+            t1.query(ESWordPutType.class).execute("Word1");
+            t1.commit();
+          }
+
+          final var ex =
+            assertThrows(DDatabaseException.class, t0::commit);
+          assertEquals("error-database-cancelled", ex.errorCode());
+        }
+      }
+
+      try (var t = db.openTransaction()) {
+        assertEquals(List.of("Word1"), words(t));
+      }
+    }
+  }
+
+  @Test
+  public void testWatchdogStackTraceSampling()
+    throws Exception
+  {
+    final var configuration =
+      new ESDatabaseConfiguration(
+        Optional.empty(),
+        DDatabaseTelemetryNoOp.get(),
+        DDatabaseCreate.CREATE_DATABASE,
+        DDatabaseUpgrade.UPGRADE_DATABASE,
+        new DSDatabaseLocationFile(this.databaseFile.resolveSibling("s.db")),
+        DSDatabaseAccessMode.READ_WRITE,
+        DSDatabaseProfile.durable(),
+        Optional.empty(),
+        Optional.empty(),
+        false,
+        Optional.empty(),
+        Optional.of(
+          new DDatabaseWatchdogConfiguration(
+            Duration.ofSeconds(1L),
+            Duration.ofSeconds(60L),
+            Optional.empty(),
+            2
+          )
+        )
+      );
+
+    try (var db = this.databases.open(configuration, event -> { })) {
+      try (var c0 = db.openConnection();
+           var c1 = db.openConnection();
+           var c2 = db.openConnection();
+           var c3 = db.openConnection()) {
+        final var sampled =
+          db.registry()
+            .liveConnections()
+            .stream()
+            .filter(c -> !c.openedBy().isEmpty())
+            .count();
+        assertEquals(2L, sampled);
+      }
+    }
+  }
 }